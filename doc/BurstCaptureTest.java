@@ -0,0 +1,160 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubCapture;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "BurstCaptureTest")
+public class BurstCaptureTest extends LinearOpMode {
+    private static final long CAPTURE_MILLIS = 3000;
+
+    // the hub resamples every millisecond, and at 400 kHz each READ of the burst profile takes well under that
+    private static final long SAMPLE_INTERVAL_MICROS = 1000;
+    private static final double TRANSACTION_OVERHEAD_MICROS = 250;
+
+    // each spike stalls one READ for long enough that the hub resamples many times before the next one
+    private static final double LATENCY_SPIKE_RATE = 0.002;
+    private static final long LATENCY_SPIKE_MILLIS = 20;
+
+    private static final int POTENTIOMETER_RAW = 2048;
+
+    private static final double RATE_TOLERANCE = 0.1;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    public void runOpMode() throws InterruptedException {
+        emulator.setSampleIntervalMicros(SAMPLE_INTERVAL_MICROS);
+
+        emulator.setWireTimeModel(
+                true,
+                TRANSACTION_OVERHEAD_MICROS
+        );
+
+        emulator.setAnalogDigitalValue(
+                1,
+                POTENTIOMETER_RAW
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setAnalogDigitalDevice(
+                1,
+                SRSHub.AnalogDigitalDevice.ANALOG
+        );
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.APDS9151()
+        );
+
+        hub.init(config);
+
+        hub.setBusSpeed(LynxI2cDeviceSynch.BusSpeed.FAST_400K);
+
+        // allocated once, before the burst, so that nothing is allocated between reads
+        SRSHubCapture capture = new SRSHubCapture(20_000);
+
+        // the flywheel encoder and the arm potentiometer
+        capture.addEncoder(1);
+        capture.addAnalogPin(1);
+
+        waitForStart();
+
+        emulator.setLatencySpikeMillis(LATENCY_SPIKE_MILLIS);
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.LATENCY_SPIKE,
+                LATENCY_SPIKE_RATE
+        );
+
+        long spikesBefore = emulator.faultCount(SRSHubEmulator.Fault.LATENCY_SPIKE);
+
+        hub.capture(
+                capture,
+                CAPTURE_MILLIS
+        );
+
+        long spikes = emulator.faultCount(SRSHubEmulator.Fault.LATENCY_SPIKE) - spikesBefore;
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.LATENCY_SPIKE,
+                0
+        );
+
+        // every sample the hub took outside the spikes; the loop's own scheduling costs a few more
+        double expectedRateHz = 1e6 / SAMPLE_INTERVAL_MICROS *
+                (1 - spikes * LATENCY_SPIKE_MILLIS / (double) CAPTURE_MILLIS);
+
+        boolean rateMatches = Math.abs(capture.sampleRateHz() - expectedRateHz) <= RATE_TOLERANCE * expectedRateHz &&
+                Math.abs(capture.medianIntervalMicros() - SAMPLE_INTERVAL_MICROS) < 0.01 * SAMPLE_INTERVAL_MICROS;
+
+        // each spike must show up as a gap of about its length; shorter gaps are host scheduling, which the capture
+        // reports too. a spike on the first READ has no sample before it, and one on the last can stall past the end
+        // of the burst, so one spike may go without a gap
+        long[] timestamps = capture.timestampsNanos();
+        int spikeGaps = 0;
+
+        for (int gap : capture.gapIndices()) {
+            if ((timestamps[gap] - timestamps[gap - 1]) / 1e3 > LATENCY_SPIKE_MILLIS * 1000 - SAMPLE_INTERVAL_MICROS) {
+                spikeGaps++;
+            }
+        }
+
+        boolean potentiometerMatches = true;
+
+        for (int raw : capture.analogValues(1)) {
+            potentiometerMatches &= raw == POTENTIOMETER_RAW;
+        }
+
+        boolean passed = rateMatches &&
+                spikeGaps >= spikes - 1 &&
+                spikeGaps <= spikes &&
+                capture.failedReads() == 0 &&
+                !capture.truncated() &&
+                potentiometerMatches;
+
+        String result = String.format(
+                "%s: %d samples at %.0f Hz of %.0f Hz expected (median interval %.0f us, largest %.0f us); %d gaps, " +
+                        "%d of them for the %d latency spikes; %d failed and %d repeated reads; potentiometer matches %b",
+                passed ? "PASS" : "FAIL",
+                capture.samples(),
+                capture.sampleRateHz(),
+                expectedRateHz,
+                capture.medianIntervalMicros(),
+                capture.largestIntervalMicros(),
+                capture.gapIndices().length,
+                spikeGaps,
+                spikes,
+                capture.failedReads(),
+                capture.duplicateReads(),
+                potentiometerMatches
+        );
+
+        RobotLog.ii(
+                "BurstCaptureTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
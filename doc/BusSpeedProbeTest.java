@@ -0,0 +1,100 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "BusSpeedProbeTest")
+public class BusSpeedProbeTest extends LinearOpMode {
+    private static final int TRIALS = 20;
+
+    public void runOpMode() throws InterruptedException {
+        // on a robot, replace the emulator with hardwareMap.get(SRSHub.class, "srshub") to probe the real wiring
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        emulator.setWireTimeModel(
+                true,
+                200
+        );
+
+        // a long or noisy cable typically holds up at 400 kHz but not at 1 MHz
+        emulator.setBusSpeedErrorRate(
+                LynxI2cDeviceSynch.BusSpeed.FAST_400K,
+                0.002
+        );
+
+        emulator.setBusSpeedErrorRate(
+                LynxI2cDeviceSynch.BusSpeed.FASTPLUS_1M,
+                0.2
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        hub.init(config);
+
+        waitForStart();
+
+        // with 0.2% errors at 400 kHz a 200-read burst sees a few failures now and then, which must not push the probe
+        // down to 100 kHz; every seed should settle on 400 kHz
+        int[] selections = new int[LynxI2cDeviceSynch.BusSpeed.values().length];
+
+        SRSHub.BusSpeedProbe probe = null;
+
+        for (int trial = 0; trial < TRIALS && opModeIsActive(); trial++) {
+            emulator.setFaultSeed(trial);
+
+            probe = hub.probeBusSpeed();
+
+            selections[probe.selected.ordinal()]++;
+        }
+
+        int expected = selections[LynxI2cDeviceSynch.BusSpeed.FAST_400K.ordinal()];
+
+        String result = String.format(
+                "%s: selected FAST_400K in %d of %d probes (STANDARD_100K %d, FASTPLUS_1M %d)",
+                expected == TRIALS ? "PASS" : "FAIL",
+                expected,
+                TRIALS,
+                selections[LynxI2cDeviceSynch.BusSpeed.STANDARD_100K.ordinal()],
+                selections[LynxI2cDeviceSynch.BusSpeed.FASTPLUS_1M.ordinal()]
+        );
+
+        RobotLog.ii(
+                "BusSpeedProbeTest",
+                result
+        );
+
+        // keep checking once a second while running, in case the bus degrades as the robot moves
+        hub.setBusSpeedRecheck(1000);
+
+        while (opModeIsActive()) {
+            hub.update();
+
+            telemetry.addLine(result);
+
+            if (probe != null) {
+                telemetry.addLine(probe.toString());
+            }
+
+            telemetry.addData(
+                    "bus speed",
+                    hub.busSpeed()
+            );
+            telemetry.update();
+        }
+    }
+}
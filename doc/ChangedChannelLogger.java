@@ -0,0 +1,144 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+import java.util.Random;
+
+@TeleOp(name = "ChangedChannelLogger")
+public class ChangedChannelLogger extends LinearOpMode {
+    private static final int UPDATES = 1000;
+
+    public void runOpMode() throws InterruptedException {
+        waitForStart();
+
+        for (boolean moving : new boolean[]{false, true}) {
+            if (!opModeIsActive()) {
+                break;
+            }
+
+            String result = run(moving);
+
+            RobotLog.ii(
+                    "ChangedChannelLogger",
+                    result
+            );
+
+            telemetry.addLine(result);
+            telemetry.update();
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private String run(boolean moving) {
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        for (int pin = 1; pin <= 4; pin++) {
+            config.setAnalogDigitalDevice(
+                    pin,
+                    SRSHub.AnalogDigitalDevice.ANALOG
+            );
+        }
+
+        for (int port = 1; port <= 4; port++) {
+            config.setEncoder(
+                    port,
+                    SRSHub.Encoder.QUADRATURE
+            );
+        }
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_4x4)
+        );
+
+        hub.init(config);
+
+        Random random = new Random(1);
+
+        long logged = 0;
+        long everything = 0;
+
+        for (int i = 0; i < UPDATES; i++) {
+            if (moving) {
+                for (int pin = 1; pin <= 4; pin++) {
+                    emulator.setAnalogDigitalValue(
+                            pin,
+                            1000 + random.nextInt(16)
+                    );
+                }
+
+                for (int port = 1; port <= 4; port++) {
+                    emulator.setEncoder(
+                            port,
+                            i * 25 * port,
+                            2500 * port
+                    );
+                }
+
+                emulator.setI2CDeviceField(
+                        1,
+                        SRSHub.VL53L5CX.class,
+                        random.nextInt(16),
+                        300 + random.nextInt(1000)
+                );
+            }
+
+            hub.update();
+
+            // a logger that writes every channel on every loop would write all of these
+            everything += 4 + 4 + 16;
+
+            logged += logChanges(hub);
+        }
+
+        return String.format(
+                "%s: %.2f values logged per update instead of %.2f",
+                moving ? "moving" : "idle",
+                (double) logged / UPDATES,
+                (double) everything / UPDATES
+        );
+    }
+
+    // visits only the channels and fields the update changed, returning how many values it would log
+    private static int logChanges(SRSHub hub) {
+        int values = 0;
+
+        long changed = hub.changedChannels();
+
+        while (changed != 0) {
+            int bit = Long.numberOfTrailingZeros(changed);
+
+            changed &= changed - 1;
+
+            if (bit >= SRSHub.CHANGED_I2C_DEVICE_SHIFT) {
+                int device = bit - SRSHub.CHANGED_I2C_DEVICE_SHIFT;
+
+                for (int field = hub.nextChangedI2CDeviceField(device, 0);
+                     field >= 0;
+                     field = hub.nextChangedI2CDeviceField(device, field + 1)) {
+                    values++;
+                }
+            }
+            else {
+                values++;
+            }
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,231 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubColorClassifier;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+import java.util.Random;
+
+@TeleOp(name = "ColorClassifierTest")
+public class ColorClassifierTest extends LinearOpMode {
+    private static final String[] NAMES = {
+            "red",
+            "blue",
+            "yellow"
+    };
+
+    // the share of the total each game element reflects into the red, green, blue and infrared channels
+    private static final double[][] REFERENCES = {
+            {0.55, 0.25, 0.10, 0.10},
+            {0.12, 0.28, 0.50, 0.10},
+            {0.40, 0.42, 0.08, 0.10}
+    };
+
+    private static final int TRAINING_SAMPLES = 500;
+    private static final int TEST_SAMPLES = 1000;
+
+    private static final double MIN_ACCURACY = 0.95;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    private final Random random = new Random(1);
+
+    public void runOpMode() throws InterruptedException {
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        // first collect samples of each game element with a classifier-less sensor
+        SRSHub.Config training = new SRSHub.Config();
+
+        training.addI2CDevice(
+                1,
+                new SRSHub.APDS9151()
+        );
+
+        hub.init(training);
+
+        SRSHubColorClassifier.Builder builder = new SRSHubColorClassifier.Builder(16);
+
+        for (String name : NAMES) {
+            builder.addClass(name);
+        }
+
+        // samples darker than this, such as with nothing in front of the sensor, stay unknown
+        builder.setMinimumTotal(2000);
+
+        waitForStart();
+
+        for (int i = 0; i < TRAINING_SAMPLES * NAMES.length && opModeIsActive(); i++) {
+            int element = i % NAMES.length;
+
+            present(element);
+
+            hub.update();
+
+            SRSHub.APDS9151 sensor = hub.getI2CDevice(
+                    1,
+                    SRSHub.APDS9151.class
+            );
+
+            if (!sensor.disconnected && hub.fresh()) {
+                builder.addSample(
+                        element,
+                        sensor.infrared,
+                        sensor.red,
+                        sensor.green,
+                        sensor.blue
+                );
+            }
+        }
+
+        // store these bytes and load them with SRSHubColorClassifier.fromBytes to skip training in a match
+        SRSHubColorClassifier classifier = SRSHubColorClassifier.fromBytes(builder
+                .build()
+                .toBytes());
+
+        SRSHub.Config classifying = new SRSHub.Config();
+
+        classifying.addI2CDevice(
+                1,
+                new SRSHub.APDS9151(classifier)
+        );
+
+        hub.switchProfile(classifying);
+
+        // then classify fresh samples of each element as they are decoded
+        int[] correct = new int[NAMES.length];
+        int[] presented = new int[NAMES.length];
+
+        for (int i = 0; i < TEST_SAMPLES * NAMES.length && opModeIsActive(); i++) {
+            int element = i % NAMES.length;
+
+            present(element);
+
+            hub.update();
+
+            SRSHub.APDS9151 sensor = hub.getI2CDevice(
+                    1,
+                    SRSHub.APDS9151.class
+            );
+
+            if (!hub.fresh()) {
+                continue;
+            }
+
+            presented[element]++;
+
+            if (sensor.colorClass == element) {
+                correct[element]++;
+            }
+        }
+
+        // nothing in front of the sensor
+        setChannels(
+                10,
+                10,
+                10,
+                10
+        );
+
+        hub.update();
+
+        boolean darkUnknown = hub.getI2CDevice(
+                1,
+                SRSHub.APDS9151.class
+        ).colorClass == SRSHubColorClassifier.UNKNOWN;
+
+        boolean passed = darkUnknown;
+
+        StringBuilder accuracies = new StringBuilder();
+
+        for (int element = 0; element < NAMES.length; element++) {
+            double accuracy = presented[element] > 0 ? correct[element] / (double) presented[element] : 0;
+
+            passed &= accuracy >= MIN_ACCURACY;
+
+            accuracies.append(String.format(
+                    "%s %.1f%%, ",
+                    NAMES[element],
+                    accuracy * 100
+            ));
+        }
+
+        String result = String.format(
+                "%s: accuracy %sat least %.0f%% required; dark reading unknown %b; %d byte table",
+                passed ? "PASS" : "FAIL",
+                accuracies,
+                MIN_ACCURACY * 100,
+                darkUnknown,
+                classifier.toBytes().length
+        );
+
+        RobotLog.ii(
+                "ColorClassifierTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    // holds an element in front of the emulated sensor, at a random distance and with 5% noise on every channel
+    private void present(int element) {
+        double brightness = 20000 + random.nextDouble() * 400000;
+
+        int[] channels = new int[4];
+
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = (int) Math.max(
+                    0,
+                    brightness * REFERENCES[element][i] * (1 + random.nextGaussian() * 0.05)
+            );
+        }
+
+        setChannels(
+                channels[0],
+                channels[1],
+                channels[2],
+                channels[3]
+        );
+    }
+
+    private void setChannels(int red, int green, int blue, int infrared) {
+        emulator.setI2CDeviceField(
+                1,
+                SRSHub.APDS9151.class,
+                1,
+                infrared
+        );
+
+        emulator.setI2CDeviceField(
+                1,
+                SRSHub.APDS9151.class,
+                2,
+                red
+        );
+
+        emulator.setI2CDeviceField(
+                1,
+                SRSHub.APDS9151.class,
+                3,
+                green
+        );
+
+        emulator.setI2CDeviceField(
+                1,
+                SRSHub.APDS9151.class,
+                4,
+                blue
+        );
+    }
+}
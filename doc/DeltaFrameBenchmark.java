@@ -0,0 +1,295 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+import java.util.Random;
+
+@TeleOp(name = "DeltaFrameBenchmark")
+public class DeltaFrameBenchmark extends LinearOpMode {
+    private static final String[] TRACES = {
+            "robot idle",
+            "stationary ToF",
+            "Pinpoint at rest",
+            "Pinpoint moving",
+            "driving"
+    };
+
+    private static final LynxI2cDeviceSynch.BusSpeed[] BUS_SPEEDS = {
+            LynxI2cDeviceSynch.BusSpeed.STANDARD_100K,
+            LynxI2cDeviceSynch.BusSpeed.FAST_400K
+    };
+
+    private static final double TRANSACTION_OVERHEAD_MICROS = SRSHub.BandwidthPlan.DEFAULT_TRANSACTION_OVERHEAD_MICROS;
+
+    private static final int UPDATES = 1000;
+
+    public void runOpMode() throws InterruptedException {
+        waitForStart();
+
+        for (int i = 0; i < TRACES.length && opModeIsActive(); i++) {
+            for (LynxI2cDeviceSynch.BusSpeed busSpeed : BUS_SPEEDS) {
+                run(
+                        i,
+                        busSpeed,
+                        false
+                );
+
+                SRSHub delta = run(
+                        i,
+                        busSpeed,
+                        true
+                );
+
+                double fullBytes = wireBytes[0];
+                double deltaBytes = wireBytes[1];
+
+                double fullMicros = wireMicros[0];
+                double deltaMicros = wireMicros[1];
+
+                String result = String.format(
+                        "%s at %s: full %.1f bytes, %.0f us; delta %.1f bytes, %.0f us per update (saves %.1f bytes, " +
+                                "%.0f us, %.0f%%); delta length %d, %d keyframes",
+                        TRACES[i],
+                        busSpeed,
+                        fullBytes,
+                        fullMicros,
+                        deltaBytes,
+                        deltaMicros,
+                        fullBytes - deltaBytes,
+                        fullMicros - deltaMicros,
+                        100 * (fullMicros - deltaMicros) / fullMicros,
+                        delta.deltaLength(),
+                        delta.keyframes()
+                );
+
+                RobotLog.ii(
+                        "DeltaFrameBenchmark",
+                        result
+                );
+
+                telemetry.addLine(result);
+                telemetry.update();
+            }
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    // the bytes read and modeled wire time per update of the most recent full and delta frame runs
+    private final double[] wireBytes = new double[2];
+    private final double[] wireMicros = new double[2];
+
+    private SRSHub run(int traceIndex, LynxI2cDeviceSynch.BusSpeed busSpeed, boolean deltaFrames) {
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        emulator.setWireTimeModel(
+                true,
+                TRANSACTION_OVERHEAD_MICROS
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        hub.setBusSpeed(busSpeed);
+
+        SRSHub.Config config = newConfig(traceIndex);
+
+        config.setDeltaFrames(deltaFrames);
+
+        // the same seed gives both runs the same trace
+        Random random = new Random(traceIndex);
+
+        step(
+                traceIndex,
+                0,
+                emulator,
+                random
+        );
+
+        hub.init(config);
+
+        long wireNanos = emulator.wireNanos();
+        long wireBytes = hub.wireBytes();
+
+        for (int i = 1; i <= UPDATES; i++) {
+            step(
+                    traceIndex,
+                    i,
+                    emulator,
+                    random
+            );
+
+            hub.update();
+        }
+
+        this.wireBytes[deltaFrames ? 1 : 0] = (double) (hub.wireBytes() - wireBytes) / UPDATES;
+        wireMicros[deltaFrames ? 1 : 0] = (emulator.wireNanos() - wireNanos) / 1000.0 / UPDATES;
+
+        return hub;
+    }
+
+    // sets the sensor readings for the i-th update of a trace
+    private static void step(int traceIndex, int i, SRSHubEmulator emulator, Random random) {
+        switch (TRACES[traceIndex]) {
+            case "robot idle":
+                // everything at rest but two potentiometers, which flicker by a count
+                for (int pin = 1; pin <= 12; pin++) {
+                    emulator.setAnalogDigitalValue(
+                            pin,
+                            pin <= 2 ? 1000 * pin + random.nextInt(2) : 300 * pin
+                    );
+                }
+
+                for (int port = 1; port <= 6; port++) {
+                    emulator.setEncoder(
+                            port,
+                            1234 * port,
+                            0
+                    );
+                }
+
+                break;
+            case "stationary ToF":
+                // a few zones at a time flicker by a millimeter
+                for (int zone = 0; zone < 64; zone++) {
+                    emulator.setI2CDeviceField(
+                            1,
+                            SRSHub.VL53L5CX.class,
+                            zone,
+                            400 + 10 * zone + (zone % 16 == i % 16 ? random.nextInt(2) : 0)
+                    );
+                }
+
+                break;
+            case "Pinpoint at rest":
+            case "Pinpoint moving":
+                boolean moving = TRACES[traceIndex].equals("Pinpoint moving");
+
+                double t = moving ? i * 0.01 : 0;
+
+                float[] pinpoint = {
+                        (float) (600 * Math.sin(0.5 * t)),
+                        (float) (400 * Math.cos(0.3 * t)),
+                        (float) (0.8 * Math.sin(0.2 * t)),
+                        moving ? (float) (300 * Math.cos(0.5 * t)) : 0,
+                        moving ? (float) (-120 * Math.sin(0.3 * t)) : 0,
+                        moving ? (float) (0.16 * Math.cos(0.2 * t)) : 0
+                };
+
+                emulator.setI2CDeviceField(
+                        1,
+                        SRSHub.GoBildaPinpoint.class,
+                        0,
+                        1
+                );
+
+                for (int field = 0; field < pinpoint.length; field++) {
+                    emulator.setI2CDeviceField(
+                            1,
+                            SRSHub.GoBildaPinpoint.class,
+                            field + 1,
+                            pinpoint[field]
+                    );
+                }
+
+                emulator.setEncoder(
+                        1,
+                        moving ? 500 + (int) (400 * Math.sin(t)) : 500,
+                        0
+                );
+
+                emulator.setEncoder(
+                        2,
+                        moving ? i * 37 : 0,
+                        moving ? 3700 : 0
+                );
+
+                break;
+            case "driving":
+                // the worst case: every wheel turning and every analog pin noisy
+                for (int pin = 1; pin <= 12; pin++) {
+                    emulator.setAnalogDigitalValue(
+                            pin,
+                            300 * pin + random.nextInt(8)
+                    );
+                }
+
+                for (int port = 1; port <= 6; port++) {
+                    emulator.setEncoder(
+                            port,
+                            i * (20 + port),
+                            2000 + 100 * port + random.nextInt(50)
+                    );
+                }
+
+                break;
+        }
+    }
+
+    private static SRSHub.Config newConfig(int index) {
+        SRSHub.Config config = new SRSHub.Config();
+
+        switch (TRACES[index]) {
+            case "robot idle":
+            case "driving":
+                for (int pin = 1; pin <= 12; pin++) {
+                    config.setAnalogDigitalDevice(
+                            pin,
+                            SRSHub.AnalogDigitalDevice.ANALOG
+                    );
+                }
+
+                for (int port = 1; port <= 6; port++) {
+                    config.setEncoder(
+                            port,
+                            SRSHub.Encoder.QUADRATURE
+                    );
+                }
+
+                break;
+            case "stationary ToF":
+                config.addI2CDevice(
+                        1,
+                        new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_8x8)
+                );
+
+                break;
+            case "Pinpoint at rest":
+            case "Pinpoint moving":
+                config.setEncoder(
+                        1,
+                        SRSHub.Encoder.PWM
+                );
+
+                config.setEncoder(
+                        2,
+                        SRSHub.Encoder.QUADRATURE
+                );
+
+                config.addI2CDevice(
+                        1,
+                        new SRSHub.GoBildaPinpoint(
+                                -50,
+                                -75,
+                                19.89f,
+                                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                        )
+                );
+
+                break;
+        }
+
+        return config;
+    }
+}
@@ -0,0 +1,194 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "DevicePruningTest")
+public class DevicePruningTest extends LinearOpMode {
+    private static final int DISCONNECTED_FRAMES = 50;
+
+    private static final long PROBE_INTERVAL_MILLIS = 1000;
+    private static final long PROBE_MILLIS = 200;
+
+    // how long the VL53L5CX stays unplugged after it is pruned, long enough for a few probes to find it still gone
+    private static final long UNPLUGGED_MILLIS = 2500;
+
+    private static final int ZONE_DISTANCE = 1234;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    private int position = 0;
+
+    public void runOpMode() throws InterruptedException {
+        emulator.setWireTimeModel(
+                true,
+                300
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_4x4)
+        );
+
+        config.addI2CDevice(
+                2,
+                new SRSHub.APDS9151()
+        );
+
+        hub.init(config);
+
+        int fullLength = hub.updateLength();
+
+        // prune a device after 50 disconnected frames, and look for it again for 200 ms every second
+        hub.setDevicePruning(
+                DISCONNECTED_FRAMES,
+                PROBE_INTERVAL_MILLIS,
+                PROBE_MILLIS
+        );
+
+        waitForStart();
+
+        // unplug the VL53L5CX: it must be pruned on exactly the threshold's disconnected frame
+        emulator.setI2CDeviceDisconnected(
+                1,
+                SRSHub.VL53L5CX.class,
+                true
+        );
+
+        // every frame is new, and the one that prunes the device is no longer fresh once the SRSHub has switched
+        // away from it, so the disconnected frames are counted from the total
+        long freshBefore = hub.freshFrames();
+        long disconnectedFrames = 0;
+
+        while (!hub.i2cDevicePruned(1, SRSHub.VL53L5CX.class) &&
+                disconnectedFrames <= DISCONNECTED_FRAMES &&
+                opModeIsActive()) {
+            update(hub);
+
+            disconnectedFrames = hub.freshFrames() - freshBefore;
+        }
+
+        boolean prunedAtThreshold = hub.i2cDevicePruned(1, SRSHub.VL53L5CX.class) &&
+                disconnectedFrames == DISCONNECTED_FRAMES;
+
+        int prunedLength = hub.updateLength();
+
+        // probes that find it still unplugged must prune it again
+        long unpluggedEnd = System.nanoTime() + UNPLUGGED_MILLIS * 1_000_000;
+
+        while (System.nanoTime() < unpluggedEnd && opModeIsActive()) {
+            update(hub);
+        }
+
+        boolean stayedPruned = hub.i2cDevicePruned(1, SRSHub.VL53L5CX.class) &&
+                hub.deviceRestores() == 0 &&
+                hub.pruneProbes() >= UNPLUGGED_MILLIS / PROBE_INTERVAL_MILLIS - 1;
+
+        // plug it back in: the next probe must restore it once it ends
+        emulator.setI2CDeviceDisconnected(
+                1,
+                SRSHub.VL53L5CX.class,
+                false
+        );
+
+        emulator.setI2CDeviceField(
+                1,
+                SRSHub.VL53L5CX.class,
+                0,
+                ZONE_DISTANCE
+        );
+
+        long reconnected = System.nanoTime();
+        long restoreEnd = reconnected + (PROBE_INTERVAL_MILLIS + 2 * PROBE_MILLIS) * 1_000_000;
+
+        while ((hub.i2cDevicePruned(1, SRSHub.VL53L5CX.class) || hub.probingPrunedDevices()) &&
+                System.nanoTime() < restoreEnd &&
+                opModeIsActive()) {
+            update(hub);
+        }
+
+        double restoreMillis = (System.nanoTime() - reconnected) / 1e6;
+
+        update(hub);
+
+        SRSHub.VL53L5CX tof = hub.getI2CDevice(
+                1,
+                SRSHub.VL53L5CX.class
+        );
+
+        boolean restored = !hub.i2cDevicePruned(1, SRSHub.VL53L5CX.class) &&
+                hub.deviceRestores() == 1 &&
+                hub.updateLength() == fullLength &&
+                !tof.disconnected &&
+                tof.distances[0] == ZONE_DISTANCE;
+
+        boolean passed = prunedAtThreshold &&
+                prunedLength < fullLength &&
+                stayedPruned &&
+                restored &&
+                hub.devicePrunes() == 1 &&
+                !hub.getI2CDevice(2, SRSHub.APDS9151.class).disconnected &&
+                hub.readEncoder(1).longPosition == position;
+
+        String result = String.format(
+                "%s: pruned after %d of %d disconnected frames, update length %d to %d bytes; still pruned after %d " +
+                        "probes %b; restored %b %.0f ms after reconnecting, zone 0 %d mm; %d prunes, %d restores; " +
+                        "encoder %d of %d",
+                passed ? "PASS" : "FAIL",
+                disconnectedFrames,
+                DISCONNECTED_FRAMES,
+                fullLength,
+                prunedLength,
+                hub.pruneProbes(),
+                stayedPruned,
+                restored,
+                restoreMillis,
+                tof.distances[0],
+                hub.devicePrunes(),
+                hub.deviceRestores(),
+                hub.readEncoder(1).longPosition,
+                position
+        );
+
+        RobotLog.ii(
+                "DevicePruningTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    // turns the encoder on every update, so every frame is new
+    private void update(SRSHub hub) {
+        position += 2;
+
+        emulator.setEncoder(
+                1,
+                position,
+                100
+        );
+
+        hub.update();
+    }
+}
@@ -0,0 +1,118 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "FrameLayoutBenchmark")
+public class FrameLayoutBenchmark extends LinearOpMode {
+    private static final int ITERATIONS = 20000;
+
+    // 9 bits per byte (8 data + ACK) at 400 kHz, plus the register write and repeated start that precede every READ
+    private static final double WIRE_MICROS_PER_BYTE = 9 / 0.4;
+    private static final double WIRE_MICROS_OVERHEAD = 4 * WIRE_MICROS_PER_BYTE;
+
+    public void runOpMode() throws InterruptedException {
+        waitForStart();
+
+        for (SRSHub.FrameLayout layout : SRSHub.FrameLayout.values()) {
+            SRSHubEmulator emulator = new SRSHubEmulator();
+
+            SRSHub hub = new SRSHub(
+                    emulator.asDeviceClient(),
+                    true
+            );
+
+            SRSHub.Config config = new SRSHub.Config();
+
+            for (int pin = 1; pin <= 4; pin++) {
+                config.setAnalogDigitalDevice(
+                        pin,
+                        SRSHub.AnalogDigitalDevice.ANALOG
+                );
+            }
+
+            config.setAnalogDigitalDevice(
+                    5,
+                    SRSHub.AnalogDigitalDevice.DIGITAL
+            );
+
+            for (int port = 1; port <= 3; port++) {
+                config.setEncoder(
+                        port,
+                        SRSHub.Encoder.QUADRATURE
+                );
+            }
+
+            config.addI2CDevice(
+                    1,
+                    new SRSHub.GoBildaPinpoint(
+                            -50,
+                            -75,
+                            19.89f,
+                            SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                            SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                    )
+            );
+
+            config.addI2CDevice(
+                    2,
+                    new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_4x4)
+            );
+
+            config.setFrameLayout(layout);
+
+            hub.init(config);
+
+            long emulatorNanos = emulator.readNanos();
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < ITERATIONS && opModeIsActive(); i++) {
+                emulator.setEncoder(
+                        1,
+                        i * 7,
+                        700
+                );
+
+                emulator.setAnalogDigitalValue(
+                        1,
+                        i & 4095
+                );
+
+                hub.update();
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            double decodeMicros = (elapsed - (emulator.readNanos() - emulatorNanos)) / 1000.0 / ITERATIONS;
+
+            double wireMicros = WIRE_MICROS_OVERHEAD + hub.updateLength() * WIRE_MICROS_PER_BYTE;
+
+            String result = String.format(
+                    "%s (negotiated %s): %d bytes, decode %.2f us, wire %.0f us",
+                    layout,
+                    hub.frameLayout(),
+                    hub.updateLength(),
+                    decodeMicros,
+                    wireMicros
+            );
+
+            RobotLog.ii(
+                    "FrameLayoutBenchmark",
+                    result
+            );
+
+            telemetry.addLine(result);
+        }
+
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+import java.util.Arrays;
+
+@TeleOp(name = "LoopRateBenchmark")
+public class LoopRateBenchmark extends LinearOpMode {
+    private static final String[] CONFIGS = {
+            "encoders only",
+            "HubTest",
+            "max analog",
+            "VL53L5CX 8x8",
+            "max frame"
+    };
+
+    private static final LynxI2cDeviceSynch.BusSpeed[] BUS_SPEEDS = {
+            LynxI2cDeviceSynch.BusSpeed.STANDARD_100K,
+            LynxI2cDeviceSynch.BusSpeed.FAST_400K,
+            LynxI2cDeviceSynch.BusSpeed.FASTPLUS_1M
+    };
+
+    // the Lynx command round trip around every bulk-read; replace it with the latency measured by
+    // SRSHub.probeBusSpeed() on a real robot for a closer match
+    private static final double TRANSACTION_OVERHEAD_MICROS = SRSHub.BandwidthPlan.DEFAULT_TRANSACTION_OVERHEAD_MICROS;
+
+    private static final long RUN_NANOS = 2_000_000_000L;
+    private static final int MAX_UPDATES = 100000;
+
+    private final long[] latencies = new long[MAX_UPDATES];
+
+    public void runOpMode() throws InterruptedException {
+        waitForStart();
+
+        for (int i = 0; i < CONFIGS.length && opModeIsActive(); i++) {
+            for (LynxI2cDeviceSynch.BusSpeed busSpeed : BUS_SPEEDS) {
+                String result = run(
+                        i,
+                        busSpeed
+                );
+
+                RobotLog.ii(
+                        "LoopRateBenchmark",
+                        result
+                );
+
+                telemetry.addLine(result);
+                telemetry.update();
+            }
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private String run(int configIndex, LynxI2cDeviceSynch.BusSpeed busSpeed) {
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        emulator.setWireTimeModel(
+                true,
+                TRANSACTION_OVERHEAD_MICROS
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        hub.setBusSpeed(busSpeed);
+
+        SRSHub.Config config = newConfig(configIndex);
+
+        hub.init(config);
+
+        SRSHub.BandwidthPlan plan = config.plan(TRANSACTION_OVERHEAD_MICROS);
+
+        long emulatorNanos = emulator.readNanos();
+        long wireNanos = emulator.wireNanos();
+
+        int updates = 0;
+
+        long start = System.nanoTime();
+        long end = start + RUN_NANOS;
+        long now = start;
+
+        while (now < end && updates < MAX_UPDATES) {
+            // vary the frame so that every update is decoded rather than skipped as a repeat
+            emulator.setEncoder(
+                    1,
+                    updates * 7,
+                    700
+            );
+
+            emulator.setAnalogDigitalValue(
+                    1,
+                    updates & 4095
+            );
+
+            emulator.setI2CDeviceField(
+                    1,
+                    SRSHub.VL53L5CX.class,
+                    0,
+                    updates & 2047
+            );
+
+            hub.update();
+
+            long finished = System.nanoTime();
+
+            latencies[updates++] = finished - now;
+
+            now = finished;
+        }
+
+        long elapsed = now - start;
+
+        wireNanos = emulator.wireNanos() - wireNanos;
+        emulatorNanos = emulator.readNanos() - emulatorNanos;
+
+        // everything that was neither on the modeled wire nor building the emulated frame was spent in the driver
+        long driverNanos = elapsed - wireNanos - emulatorNanos;
+
+        Arrays.sort(
+                latencies,
+                0,
+                updates
+        );
+
+        int speed = Arrays
+                .asList(plan.busSpeeds)
+                .indexOf(busSpeed);
+
+        return String.format(
+                "%s, %d bytes at %s: %.0f updates/s (plan %.0f); per update %.0f us wire, %.1f us driver cpu " +
+                        "(%.1f%%); latency p50 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.0f us",
+                CONFIGS[configIndex],
+                hub.updateLength(),
+                busSpeed,
+                updates * 1e9 / elapsed,
+                plan.maxUpdatesPerSecond[speed],
+                wireNanos / 1000.0 / updates,
+                driverNanos / 1000.0 / updates,
+                100.0 * driverNanos / elapsed,
+                percentile(updates, 0.5),
+                percentile(updates, 0.99),
+                percentile(updates, 0.999),
+                latencies[updates - 1] / 1000.0
+        );
+    }
+
+    private double percentile(int count, double fraction) {
+        return latencies[(int) Math.min(count - 1, Math.floor(count * fraction))] / 1000.0;
+    }
+
+    private static SRSHub.Config newConfig(int index) {
+        SRSHub.Config config = new SRSHub.Config();
+
+        switch (CONFIGS[index]) {
+            case "encoders only":
+                for (int port = 1; port <= 6; port++) {
+                    config.setEncoder(
+                            port,
+                            SRSHub.Encoder.QUADRATURE
+                    );
+                }
+
+                break;
+            case "HubTest":
+                config.setEncoder(
+                        1,
+                        SRSHub.Encoder.PWM
+                );
+
+                config.setEncoder(
+                        2,
+                        SRSHub.Encoder.QUADRATURE
+                );
+
+                config.addI2CDevice(
+                        1,
+                        newPinpoint()
+                );
+
+                break;
+            case "max analog":
+                for (int pin = 1; pin <= 12; pin++) {
+                    config.setAnalogDigitalDevice(
+                            pin,
+                            SRSHub.AnalogDigitalDevice.ANALOG
+                    );
+                }
+
+                break;
+            case "VL53L5CX 8x8":
+                config.addI2CDevice(
+                        1,
+                        new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_8x8)
+                );
+
+                break;
+            case "max frame":
+                // the largest mix of channels that fits within the bulk-read limit
+                for (int pin = 1; pin <= 12; pin++) {
+                    config.setAnalogDigitalDevice(
+                            pin,
+                            SRSHub.AnalogDigitalDevice.ANALOG
+                    );
+                }
+
+                for (int port = 1; port <= 6; port++) {
+                    config.setEncoder(
+                            port,
+                            SRSHub.Encoder.QUADRATURE
+                    );
+                }
+
+                config.addI2CDevice(
+                        1,
+                        newPinpoint()
+                );
+
+                config.addI2CDevice(
+                        2,
+                        new SRSHub.APDS9151()
+                );
+
+                config.addI2CDevice(
+                        3,
+                        new SRSHub.VL53L0X()
+                );
+
+                break;
+        }
+
+        return config;
+    }
+
+    private static SRSHub.GoBildaPinpoint newPinpoint() {
+        return new SRSHub.GoBildaPinpoint(
+                -50,
+                -75,
+                19.89f,
+                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+        );
+    }
+}
@@ -0,0 +1,260 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubMailbox;
+import org.openftc.i2cdrivers.SRSHubMailboxPublisher;
+import org.openftc.i2cdrivers.SRSHubTelemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+@TeleOp(name = "MailboxTest")
+public class MailboxTest extends LinearOpMode {
+    // offsets from the layout described by SRSHubMailbox
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int DEVICES_OFFSET = 72;
+    private static final int SLOT_ENCODER_POSITIONS = 13;
+
+    private static final int FRAMES = 50;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    public void runOpMode() throws InterruptedException {
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.setAnalogDigitalDevice(
+                1,
+                SRSHub.AnalogDigitalDevice.ANALOG
+        );
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_4x4)
+        );
+
+        hub.init(config);
+
+        waitForStart();
+
+        String result;
+
+        try {
+            result = check(hub);
+        }
+        catch (IOException e) {
+            result = "FAIL: " + e.getMessage();
+        }
+
+        RobotLog.ii(
+                "MailboxTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private String check(SRSHub hub) throws IOException {
+        File file = File.createTempFile(
+                "srshub_mailbox",
+                null
+        );
+
+        file.deleteOnExit();
+
+        SRSHubMailboxPublisher publisher = new SRSHubMailboxPublisher(file);
+
+        // another process opens the same file with SRSHubMailbox.Reader; one is opened here to check what it sees
+        SRSHubMailbox.Reader reader = new SRSHubMailbox.Reader(file);
+
+        hub.setMailbox(publisher);
+
+        // every frame the hub decodes must reach the reader intact
+        int matched = 0;
+
+        for (int i = 0; i < FRAMES; i++) {
+            setInputs(i);
+
+            hub.update();
+
+            if (reader.read() && matches(reader, hub, i)) {
+                matched++;
+            }
+        }
+
+        long position = reader.readEncoderPosition(1);
+
+        // a frame whose checksum does not match, as a copy torn by reordered loads would be, and a publisher that died
+        // while writing, must both be rejected while the last good frame is kept
+        long tornBefore = reader.tornReads();
+
+        boolean corruptRejected;
+        boolean midWriteRejected;
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raw
+                    .getChannel()
+                    .map(
+                            FileChannel.MapMode.READ_WRITE,
+                            0,
+                            SRSHubMailbox.LENGTH
+                    );
+
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            long sequence = buffer.getLong(SEQUENCE_OFFSET);
+            int slots = DEVICES_OFFSET + 16 * reader.deviceCount();
+
+            buffer.putLong(
+                    slots + 8 * SLOT_ENCODER_POSITIONS,
+                    position + 1000
+            );
+
+            buffer.putLong(
+                    SEQUENCE_OFFSET,
+                    sequence + 2
+            );
+
+            corruptRejected = !reader.read() && reader.readEncoderPosition(1) == position;
+
+            buffer.putLong(
+                    SEQUENCE_OFFSET,
+                    sequence + 3
+            );
+
+            midWriteRejected = !reader.read() && reader.readEncoderPosition(1) == position;
+        }
+
+        long torn = reader.tornReads() - tornBefore;
+
+        setInputs(FRAMES);
+
+        hub.update();
+
+        boolean recovered = reader.read() && matches(reader, hub, FRAMES);
+
+        // a restarted publisher counts its sequence from the start again; once it reaches the sequence the reader last
+        // read, only its new session tells its frame apart from the old one
+        long previousSession = reader.session();
+        long previousVersion = reader.version();
+
+        publisher.close();
+
+        SRSHubMailboxPublisher restarted = new SRSHubMailboxPublisher(file);
+
+        hub.setMailbox(restarted);
+
+        // the reader is not asked until the new publisher's sequence equals the one it last read
+        int frame = FRAMES;
+
+        while (restarted.published() < previousVersion) {
+            setInputs(++frame);
+
+            hub.update();
+        }
+
+        boolean restartSeen = reader.version() == previousVersion &&
+                reader.read() &&
+                reader.version() == previousVersion &&
+                reader.session() == restarted.session() &&
+                matches(reader, hub, frame);
+
+        boolean sessionChanged = previousSession != restarted.session();
+
+        hub.setMailbox(null);
+
+        restarted.close();
+        reader.close();
+
+        boolean passed = matched == FRAMES &&
+                corruptRejected &&
+                midWriteRejected &&
+                torn == 2 &&
+                recovered &&
+                sessionChanged &&
+                restartSeen;
+
+        return String.format(
+                "%s: %d of %d frames read back intact; corrupted frame rejected %b, frame left mid-write rejected %b, " +
+                        "%d torn reads; next frame read %b; restarted publisher seen %b after %d sessions",
+                passed ? "PASS" : "FAIL",
+                matched,
+                FRAMES,
+                corruptRejected,
+                midWriteRejected,
+                torn,
+                recovered,
+                restartSeen,
+                reader.sessionChanges()
+        );
+    }
+
+    // gives every frame its own encoder position, potentiometer reading and ToF distances
+    private void setInputs(int frame) {
+        emulator.setEncoder(
+                1,
+                100 * frame,
+                0
+        );
+
+        emulator.setAnalogDigitalValue(
+                1,
+                frame % 4096
+        );
+
+        for (int zone = 0; zone < 16; zone++) {
+            emulator.setI2CDeviceField(
+                    1,
+                    SRSHub.VL53L5CX.class,
+                    zone,
+                    (frame * 16 + zone) % 2000
+            );
+        }
+    }
+
+    private static boolean matches(SRSHubMailbox.Reader reader, SRSHub hub, int frame) {
+        int tof = reader.findDevice(
+                1,
+                SRSHubTelemetry.TYPE_VL53L5CX
+        );
+
+        if (tof < 0 ||
+                reader.disconnected() ||
+                reader.readEncoderPosition(1) != 100L * frame ||
+                reader.readEncoderPosition(1) != hub.readEncoder(1).longPosition ||
+                reader.readAnalogDigitalDevice(1) != hub.readAnalogDigitalDevice(1)) {
+            return false;
+        }
+
+        for (int zone = 0; zone < 16; zone++) {
+            if (reader.deviceValue(tof, zone) != (frame * 16 + zone) % 2000) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,222 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubOccupancyGrid;
+
+@TeleOp(name = "OccupancyGridTest")
+public class OccupancyGridTest extends LinearOpMode {
+    // the robot's pose, in millimeters and radians
+    private static final double ROBOT_X = -200;
+    private static final double ROBOT_Y = 100;
+    private static final double ROBOT_HEADING = Math.toRadians(20);
+
+    private static final double SENSOR_FORWARD = 150;
+
+    // a wall along the y axis, through the middle of a column of cells
+    private static final double WALL_X = 810;
+
+    // what the bottom row sees of the floor
+    private static final int FLOOR_DISTANCE = 300;
+
+    private static final double CELL_SIZE = 20;
+
+    private static final int FRAMES = 20;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    public void runOpMode() throws InterruptedException {
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        // the 8x8 resolution does not fit in one frame beside a Pinpoint; use odometry on the hub's encoders for it
+        SRSHub.VL53L5CX tof = new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_4x4);
+
+        SRSHub.GoBildaPinpoint pinpoint = new SRSHub.GoBildaPinpoint(
+                -50,
+                -75,
+                19.89f,
+                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.addI2CDevice(
+                1,
+                tof
+        );
+
+        config.addI2CDevice(
+                2,
+                pinpoint
+        );
+
+        // a 4 m square around the starting position at 2 cm per cell, 80 kB
+        SRSHubOccupancyGrid grid = new SRSHubOccupancyGrid(
+                200,
+                200,
+                CELL_SIZE,
+                -2000,
+                -2000
+        );
+
+        // facing forward, 150 mm ahead of the robot's center
+        grid.setSensor(
+                tof,
+                SENSOR_FORWARD,
+                0,
+                0
+        );
+
+        grid.setPoseSource(SRSHubOccupancyGrid.pinpointPose(pinpoint));
+
+        // the bottom row sees the floor
+        grid.setRows(
+                0,
+                2
+        );
+
+        hub.init(config);
+
+        hub.setOccupancyGrid(grid);
+
+        waitForStart();
+
+        emulator.setI2CDeviceField(
+                2,
+                SRSHub.GoBildaPinpoint.class,
+                1,
+                (float) ROBOT_X
+        );
+
+        emulator.setI2CDeviceField(
+                2,
+                SRSHub.GoBildaPinpoint.class,
+                2,
+                (float) ROBOT_Y
+        );
+
+        emulator.setI2CDeviceField(
+                2,
+                SRSHub.GoBildaPinpoint.class,
+                3,
+                (float) ROBOT_HEADING
+        );
+
+        double sensorX = ROBOT_X + SENSOR_FORWARD * Math.cos(ROBOT_HEADING);
+        double sensorY = ROBOT_Y + SENSOR_FORWARD * Math.sin(ROBOT_HEADING);
+
+        double pitch = SRSHubOccupancyGrid.FIELD_OF_VIEW_RADIANS / 4;
+
+        // the horizontal distance to the wall along each column of zones, whose rows all end in the same cell
+        double[] bearings = new double[4];
+        double[] ranges = new double[4];
+
+        for (int column = 0; column < 4; column++) {
+            bearings[column] = ROBOT_HEADING + (1.5 - column) * pitch;
+            ranges[column] = (WALL_X - sensorX) / Math.cos(bearings[column]);
+        }
+
+        for (int k = 0; k < 16; k++) {
+            int row = k / 4;
+            double elevation = (1.5 - row) * pitch;
+
+            emulator.setI2CDeviceField(
+                    1,
+                    SRSHub.VL53L5CX.class,
+                    k,
+                    row == 3 ? FLOOR_DISTANCE : (int) Math.round(ranges[k % 4] / Math.cos(elevation))
+            );
+        }
+
+        // the robot stands still, so only the first of these frames is new and reaches the grid
+        for (int i = 0; i < FRAMES && opModeIsActive(); i++) {
+            hub.update();
+        }
+
+        // each column must mark the cell it ends in, clear the cells before it and leave the cells behind the wall
+        // unobserved; nothing else may be marked, including where the floor row would have ended
+        int hits = 0;
+        int cleared = 0;
+        int unobserved = 0;
+        int rangesMatched = 0;
+
+        for (int column = 0; column < 4; column++) {
+            double cos = Math.cos(bearings[column]);
+            double sin = Math.sin(bearings[column]);
+
+            if (grid.occupancy(sensorX + ranges[column] * cos, sensorY + ranges[column] * sin) > 0.5) {
+                hits++;
+            }
+
+            if (grid.occupancy(sensorX + ranges[column] / 2 * cos, sensorY + ranges[column] / 2 * sin) < 0.5) {
+                cleared++;
+            }
+
+            if (grid.occupancy(sensorX + (ranges[column] + 100) * cos, sensorY + (ranges[column] + 100) * sin) == 0.5) {
+                unobserved++;
+            }
+
+            double nearest = grid.nearestObstacle(
+                    sensorX,
+                    sensorY,
+                    bearings[column],
+                    2000
+            );
+
+            if (Math.abs(nearest - ranges[column]) <= 2 * CELL_SIZE) {
+                rangesMatched++;
+            }
+        }
+
+        short[] logOdds = new short[grid.cellsX() * grid.cellsY()];
+
+        grid.readLogOdds(logOdds);
+
+        int occupied = 0;
+
+        for (short cell : logOdds) {
+            if (cell > 0) {
+                occupied++;
+            }
+        }
+
+        boolean passed = hits == 4 &&
+                cleared == 4 &&
+                unobserved == 4 &&
+                rangesMatched == 4 &&
+                occupied == 4 &&
+                grid.frames() > 0;
+
+        String result = String.format(
+                "%s: %d of 4 wall cells occupied, %d of 4 cells before them free, %d of 4 behind them unobserved, " +
+                        "%d of 4 nearest obstacles at the wall; %d occupied cells in all after %d frames",
+                passed ? "PASS" : "FAIL",
+                hits,
+                cleared,
+                unobserved,
+                rangesMatched,
+                occupied,
+                grid.frames()
+        );
+
+        RobotLog.ii(
+                "OccupancyGridTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
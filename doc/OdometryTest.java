@@ -0,0 +1,249 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubOdometry;
+
+@TeleOp(name = "OdometryTest")
+public class OdometryTest extends LinearOpMode {
+    // a 48 mm wheel on a 2000 tick/revolution encoder
+    private static final double MM_PER_TICK = Math.PI * 48 / 2000;
+
+    private static final double TRACK_WIDTH = 300;
+    private static final double PARALLEL_OFFSET = 60;
+    private static final double PERPENDICULAR_OFFSET = -100;
+
+    private static final double SECONDS = 20;
+    private static final double STEP_SECONDS = 0.002;
+    private static final int SUBSTEPS = 20;
+
+    // a few encoder ticks of rounding over the whole run, well short of what one lost or doubled frame would cost
+    private static final double POSITION_TOLERANCE_MM = 1;
+    private static final double HEADING_TOLERANCE_RADIANS = 0.001;
+
+    private final SRSHubEmulator threeWheelEmulator = new SRSHubEmulator();
+    private final SRSHubEmulator twoWheelEmulator = new SRSHubEmulator();
+
+    // the simulated robot's true pose, and the true distance traveled by each wheel
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+
+    private final double[] wheels = new double[5];
+    private final double[] wheelRates = new double[5];
+
+    public void runOpMode() throws InterruptedException {
+        SRSHub threeWheelHub = newHub(
+                threeWheelEmulator,
+                false
+        );
+
+        SRSHub twoWheelHub = newHub(
+                twoWheelEmulator,
+                true
+        );
+
+        final SRSHub.GoBildaPinpoint pinpoint = twoWheelHub.getI2CDevice(
+                1,
+                SRSHub.GoBildaPinpoint.class
+        );
+
+        threeWheelHub.setOdometry(SRSHubOdometry.threeWheel(
+                1,
+                2,
+                3,
+                TRACK_WIDTH,
+                PERPENDICULAR_OFFSET,
+                MM_PER_TICK
+        ));
+
+        // the Pinpoint's own heading stands in for an IMU
+        twoWheelHub.setOdometry(SRSHubOdometry.twoWheel(
+                1,
+                PARALLEL_OFFSET,
+                2,
+                PERPENDICULAR_OFFSET,
+                MM_PER_TICK,
+                new SRSHubOdometry.HeadingSource() {
+                    public double headingRadians() {
+                        return pinpoint.hOrientation;
+                    }
+                }
+        ));
+
+        waitForStart();
+
+        double time = 0;
+
+        while (time < SECONDS && opModeIsActive()) {
+            for (int i = 0; i < SUBSTEPS; i++) {
+                step(
+                        time,
+                        STEP_SECONDS / SUBSTEPS
+                );
+
+                time += STEP_SECONDS / SUBSTEPS;
+            }
+
+            for (int port = 1; port <= 3; port++) {
+                threeWheelEmulator.setEncoder(
+                        port,
+                        ticks(wheels[port - 1]),
+                        ticks(wheelRates[port - 1])
+                );
+            }
+
+            for (int port = 1; port <= 2; port++) {
+                twoWheelEmulator.setEncoder(
+                        port,
+                        ticks(wheels[port + 2]),
+                        ticks(wheelRates[port + 2])
+                );
+            }
+
+            twoWheelEmulator.setI2CDeviceField(
+                    1,
+                    SRSHub.GoBildaPinpoint.class,
+                    3,
+                    (float) heading
+            );
+
+            threeWheelHub.update();
+            twoWheelHub.update();
+        }
+
+        boolean passed = withinTolerance(threeWheelHub.odometry()) &&
+                withinTolerance(twoWheelHub.odometry());
+
+        String result = String.format(
+                "%s: true (%.1f, %.1f, %.4f); three-wheel %s; two-wheel %s; within %.0f mm and %.3f rad required",
+                passed ? "PASS" : "FAIL",
+                x,
+                y,
+                heading,
+                error(threeWheelHub.odometry()),
+                error(twoWheelHub.odometry()),
+                POSITION_TOLERANCE_MM,
+                HEADING_TOLERANCE_RADIANS
+        );
+
+        RobotLog.ii(
+                "OdometryTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private SRSHub newHub(SRSHubEmulator emulator, boolean twoWheel) {
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        for (int port = 1; port <= (twoWheel ? 2 : 3); port++) {
+            config.setEncoder(
+                    port,
+                    SRSHub.Encoder.QUADRATURE
+            );
+        }
+
+        if (twoWheel) {
+            config.addI2CDevice(
+                    1,
+                    new SRSHub.GoBildaPinpoint(
+                            0,
+                            0,
+                            1,
+                            SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                            SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                    )
+            );
+        }
+
+        hub.init(config);
+
+        return hub;
+    }
+
+    // advances the simulated robot along a weaving path, strafing as it turns
+    private void step(double time, double seconds) {
+        double forward = 800 + 400 * Math.sin(0.3 * time);
+        double strafe = 250 * Math.sin(0.7 * time);
+        double turn = 1.5 * Math.sin(0.5 * time);
+
+        wheelRates[0] = forward - TRACK_WIDTH / 2 * turn;
+        wheelRates[1] = forward + TRACK_WIDTH / 2 * turn;
+        wheelRates[2] = strafe + PERPENDICULAR_OFFSET * turn;
+        wheelRates[3] = forward - PARALLEL_OFFSET * turn;
+        wheelRates[4] = strafe + PERPENDICULAR_OFFSET * turn;
+
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] += wheelRates[i] * seconds;
+        }
+
+        double deltaHeading = turn * seconds;
+        double sinTerm = Math.sin(deltaHeading) / deltaHeading;
+        double cosTerm = (1 - Math.cos(deltaHeading)) / deltaHeading;
+
+        if (deltaHeading == 0) {
+            sinTerm = 1;
+            cosTerm = 0;
+        }
+
+        double arcX = (forward * sinTerm - strafe * cosTerm) * seconds;
+        double arcY = (forward * cosTerm + strafe * sinTerm) * seconds;
+
+        x += arcX * Math.cos(heading) - arcY * Math.sin(heading);
+        y += arcX * Math.sin(heading) + arcY * Math.cos(heading);
+        heading += deltaHeading;
+    }
+
+    private static int ticks(double millimeters) {
+        return (int) Math.round(millimeters / MM_PER_TICK);
+    }
+
+    private double positionError(SRSHubOdometry odometry) {
+        return Math.hypot(
+                odometry.x() - x,
+                odometry.y() - y
+        );
+    }
+
+    // the true heading keeps accumulating while the odometry's wraps, so the two are compared on the circle
+    private double headingError(SRSHubOdometry odometry) {
+        return Math.IEEEremainder(
+                odometry.heading() - heading,
+                2 * Math.PI
+        );
+    }
+
+    private boolean withinTolerance(SRSHubOdometry odometry) {
+        return odometry.frames() > 0 &&
+                positionError(odometry) <= POSITION_TOLERANCE_MM &&
+                Math.abs(headingError(odometry)) <= HEADING_TOLERANCE_RADIANS;
+    }
+
+    private String error(SRSHubOdometry odometry) {
+        return String.format(
+                "(%.1f, %.1f, %.4f), off by %.2f mm and %.5f rad after %d frames",
+                odometry.x(),
+                odometry.y(),
+                odometry.heading(),
+                positionError(odometry),
+                headingError(odometry),
+                odometry.frames()
+        );
+    }
+}
@@ -0,0 +1,294 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.hardware.I2cDeviceSynchSimple;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubPortArbiter;
+import org.openftc.i2cdrivers.SRSHubScheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+@TeleOp(name = "PortArbiterTest")
+public class PortArbiterTest extends LinearOpMode {
+    private static final LynxI2cDeviceSynch.BusSpeed BUS_SPEED = LynxI2cDeviceSynch.BusSpeed.FAST_400K;
+
+    private static final long HUB_PERIOD_MICROS = 10_000;
+    private static final long IMU_PERIOD_MICROS = 5_000;
+    private static final long COLOR_SENSOR_PERIOD_MICROS = 20_000;
+
+    private static final long RUN_MILLIS = 3000;
+
+    private volatile boolean running;
+
+    public void runOpMode() throws InterruptedException {
+        waitForStart();
+
+        // first everything shares the port first come, first served, as it does without an arbiter
+        for (boolean arbitrated : new boolean[]{false, true}) {
+            if (!opModeIsActive()) {
+                break;
+            }
+
+            for (String result : run(arbitrated)) {
+                RobotLog.ii(
+                        "PortArbiterTest",
+                        result
+                );
+
+                telemetry.addLine(result);
+            }
+
+            telemetry.update();
+        }
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    private String[] run(boolean arbitrated) throws InterruptedException {
+        SimulatedPort port = new SimulatedPort();
+
+        SRSHubPortArbiter arbiter = new SRSHubPortArbiter();
+
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        SRSHubPortArbiter.Device hubDevice = arbiter.register(
+                "SRSHub",
+                arbitrated ? 1 : 0,
+                port.wrap(emulator.asDeviceClient())
+        );
+
+        final SRSHubPortArbiter.Device imu = arbiter.register(
+                "IMU",
+                arbitrated ? 2 : 0,
+                port.device(12)
+        );
+
+        final SRSHubPortArbiter.Device colorSensor = arbiter.register(
+                "color sensor",
+                0,
+                port.device(8)
+        );
+
+        SRSHub hub = new SRSHub(
+                hubDevice.deviceClient(),
+                true
+        );
+
+        hub.setBusSpeed(BUS_SPEED);
+
+        // a 92 byte frame, close to the bulk-read limit
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.VL53L5CX(SRSHub.VL53L5CX.Resolution.GRID_8x8)
+        );
+
+        hub.init(config);
+
+        if (arbitrated) {
+            hub.setUpdateSchedule(HUB_PERIOD_MICROS);
+
+            imu.setSchedule(
+                    IMU_PERIOD_MICROS,
+                    0
+            );
+        }
+
+        for (SRSHubPortArbiter.Device device : arbiter.devices()) {
+            device.resetStats();
+        }
+
+        running = true;
+
+        Thread imuThread = poll(
+                imu,
+                IMU_PERIOD_MICROS,
+                12,
+                false
+        );
+
+        Thread colorSensorThread = poll(
+                colorSensor,
+                COLOR_SENSOR_PERIOD_MICROS,
+                8,
+                true
+        );
+
+        // no spinning before each update, which would starve the other threads on a single core
+        SRSHubScheduler scheduler = new SRSHubScheduler(
+                hub,
+                HUB_PERIOD_MICROS * 1000,
+                0
+        );
+
+        scheduler.start();
+
+        sleep(RUN_MILLIS);
+
+        running = false;
+
+        scheduler.stop();
+
+        imuThread.join();
+        colorSensorThread.join();
+
+        SRSHubPortArbiter.Device[] devices = arbiter.devices();
+
+        String[] results = new String[devices.length + 1];
+
+        results[0] = String.format(
+                "%s: %d transactions held back, port idle for %.0f us while holding",
+                arbitrated ? "arbitrated" : "first come, first served",
+                arbiter.holds(),
+                arbiter.heldMicros()
+        );
+
+        for (int i = 0; i < devices.length; i++) {
+            SRSHubPortArbiter.Device device = devices[i];
+
+            results[i + 1] = String.format(
+                    "  %s (priority %d): %d transactions, wait mean %.0f us, p99 %.0f us, max %.0f us; " +
+                            "%d deadline misses",
+                    device.name(),
+                    device.priority(),
+                    device.transactions(),
+                    device.meanWaitMicros(),
+                    device.waitPercentileMicros(0.99),
+                    device.maxWaitMicros(),
+                    device.deadlineMisses()
+            );
+        }
+
+        return results;
+    }
+
+    // reads a device on a fixed period, or at random intervals averaging the period
+    private Thread poll(
+            final SRSHubPortArbiter.Device device,
+            final long periodMicros,
+            final int length,
+            final boolean randomized
+    ) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                Random random = new Random(length);
+
+                long next = System.nanoTime();
+
+                while (running) {
+                    long interval = randomized ? (long) (2 * periodMicros * random.nextDouble()) : periodMicros;
+
+                    next += interval * 1000;
+
+                    LockSupport.parkNanos(next - System.nanoTime());
+
+                    device.deviceClient().read(
+                            0x00,
+                            length
+                    );
+                }
+            }
+        });
+
+        thread.start();
+
+        return thread;
+    }
+
+    // a stand-in for the Lynx I2C port: it runs one transaction at a time, each holding the port for as long as it
+    // would take on the wire
+    private static class SimulatedPort {
+        private final double transactionOverheadMicros = SRSHub.BandwidthPlan.DEFAULT_TRANSACTION_OVERHEAD_MICROS;
+
+        // START, address, register, repeated START, address and STOP around the data, at 9 clocks per byte
+        private final double clockMicros = 1e6 / 400_000;
+
+        synchronized void transfer(int length) {
+            long end = System.nanoTime() + (long) ((transactionOverheadMicros + (33 + 9 * length) * clockMicros) * 1000);
+
+            // park rather than spin, so that the devices waiting for the port are not starved of CPU time
+            for (long remaining = end - System.nanoTime(); remaining > 0; remaining = end - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+
+        // a simulated device whose reads and writes occupy the port
+        I2cDeviceSynchSimple device(final int length) {
+            return (I2cDeviceSynchSimple) Proxy.newProxyInstance(
+                    I2cDeviceSynchSimple.class.getClassLoader(),
+                    new Class<?>[]{I2cDeviceSynchSimple.class},
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("read")) {
+                                transfer((Integer) args[1]);
+
+                                return new byte[(Integer) args[1]];
+                            }
+
+                            if (method.getName().startsWith("write")) {
+                                transfer(length);
+                            }
+
+                            return method.getReturnType() == boolean.class ? false : null;
+                        }
+                    }
+            );
+        }
+
+        // routes a device client's transactions through the port
+        I2cDeviceSynchSimple wrap(final I2cDeviceSynchSimple transport) {
+            return (I2cDeviceSynchSimple) Proxy.newProxyInstance(
+                    I2cDeviceSynchSimple.class.getClassLoader(),
+                    new Class<?>[]{I2cDeviceSynchSimple.class, SRSHub.BusSpeedControl.class},
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            try {
+                                if (method.getName().equals("read")) {
+                                    synchronized (SimulatedPort.this) {
+                                        transfer((Integer) args[1]);
+
+                                        return method.invoke(
+                                                transport,
+                                                args
+                                        );
+                                    }
+                                }
+
+                                if (method.getName().equals("write")) {
+                                    synchronized (SimulatedPort.this) {
+                                        transfer(((byte[]) args[1]).length);
+
+                                        return method.invoke(
+                                                transport,
+                                                args
+                                        );
+                                    }
+                                }
+
+                                return method.invoke(
+                                        transport,
+                                        args
+                                );
+                            }
+                            catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+            );
+        }
+    }
+}
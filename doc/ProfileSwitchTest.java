@@ -0,0 +1,207 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "ProfileSwitchTest")
+public class ProfileSwitchTest extends LinearOpMode {
+    // the two profiles have frames of the same length that differ only in which analog pin they carry, so a frame
+    // decoded against the wrong profile still passes its CRC and shows up as the other pin's reading
+    private static final int FIRST_PIN_RAW = 1000;
+    private static final int SECOND_PIN_RAW = 3000;
+
+    private static final int SWITCHES = 20;
+    private static final int UPDATES_PER_PROFILE = 30;
+
+    // a reconfiguration the hub finishes well within the switch timeout, and one it finishes only after it
+    private static final long FAST_RECONFIGURE_MICROS = 20_000;
+    private static final long SLOW_RECONFIGURE_MICROS = 1_500_000;
+
+    private static final long SETTLE_MILLIS = 2500;
+
+    // ticks per second
+    private static final int VELOCITY = 1500;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    private final SRSHub.Config first = newConfig(1);
+    private final SRSHub.Config second = newConfig(2);
+
+    private long startNanos;
+    private int position = 0;
+
+    private int decoded = 0;
+    private int wrong = 0;
+
+    public void runOpMode() throws InterruptedException {
+        emulator.setAnalogDigitalValue(
+                1,
+                FIRST_PIN_RAW
+        );
+
+        emulator.setAnalogDigitalValue(
+                2,
+                SECOND_PIN_RAW
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        hub.init(first);
+        hub.addProfile(second);
+
+        waitForStart();
+
+        startNanos = System.nanoTime();
+
+        SRSHub.Config active = first;
+
+        emulator.setReconfigureDelayMicros(FAST_RECONFIGURE_MICROS);
+
+        for (int i = 0; i < SWITCHES && opModeIsActive(); i++) {
+            updates(
+                    hub,
+                    active,
+                    UPDATES_PER_PROFILE
+            );
+
+            active = active == first ? second : first;
+
+            hub.switchProfile(active);
+        }
+
+        double fastSwitchMillis = hub.lastProfileSwitchMillis();
+
+        // the hub takes the new INIT only after the switch has given up on it; the SRSHub must fall back to the profile
+        // it had, and decode nothing until the hub confirms it is sampling with that profile again
+        emulator.setReconfigureDelayMicros(SLOW_RECONFIGURE_MICROS);
+
+        boolean timedOut = false;
+
+        try {
+            hub.switchProfile(active == first ? second : first);
+        }
+        catch (RuntimeException e) {
+            timedOut = true;
+        }
+
+        int gated = 0;
+        long settleEnd = System.nanoTime() + SETTLE_MILLIS * 1_000_000;
+
+        while (System.nanoTime() < settleEnd && opModeIsActive()) {
+            updates(
+                    hub,
+                    active,
+                    1
+            );
+
+            if (hub.disconnected()) {
+                gated++;
+            }
+        }
+
+        int decodedBeforeRetry = decoded;
+
+        updates(
+                hub,
+                active,
+                UPDATES_PER_PROFILE
+        );
+
+        boolean settled = decoded > decodedBeforeRetry;
+
+        // once the hub has settled, retrying the same switch goes through
+        emulator.setReconfigureDelayMicros(FAST_RECONFIGURE_MICROS);
+
+        active = active == first ? second : first;
+
+        hub.switchProfile(active);
+
+        updates(
+                hub,
+                active,
+                UPDATES_PER_PROFILE
+        );
+
+        boolean passed = wrong == 0 &&
+                timedOut &&
+                gated > 0 &&
+                settled &&
+                hub.readEncoder(1).longPosition == position;
+
+        String result = String.format(
+                "%s: %d frames decoded, %d against the wrong profile; fast switch %.1f ms; slow switch timed out %b, " +
+                        "%d updates held back until the hub confirmed, decoding after %b; encoder %d of %d",
+                passed ? "PASS" : "FAIL",
+                decoded,
+                wrong,
+                fastSwitchMillis,
+                timedOut,
+                gated,
+                settled,
+                hub.readEncoder(1).longPosition,
+                position
+        );
+
+        RobotLog.ii(
+                "ProfileSwitchTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+
+    // runs updates while the encoder turns, checking every new frame against the profile the SRSHub should be using
+    private void updates(SRSHub hub, SRSHub.Config active, int count) {
+        for (int i = 0; i < count; i++) {
+            position = (int) ((System.nanoTime() - startNanos) / 1e9 * VELOCITY);
+
+            emulator.setEncoder(
+                    1,
+                    position,
+                    VELOCITY
+            );
+
+            hub.update();
+
+            if (!hub.fresh()) {
+                continue;
+            }
+
+            decoded++;
+
+            int raw = active == first ? hub.readAnalogRaw(1) : hub.readAnalogRaw(2);
+
+            if (raw != (active == first ? FIRST_PIN_RAW : SECOND_PIN_RAW)) {
+                wrong++;
+            }
+        }
+    }
+
+    private static SRSHub.Config newConfig(int analogPin) {
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.setAnalogDigitalDevice(
+                analogPin,
+                SRSHub.AnalogDigitalDevice.ANALOG
+        );
+
+        return config;
+    }
+}
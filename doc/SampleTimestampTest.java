@@ -0,0 +1,124 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+
+@TeleOp(name = "SampleTimestampTest")
+public class SampleTimestampTest extends LinearOpMode {
+    // how much faster the emulated hub's microsecond counter runs than the host clock
+    private static final double HUB_DRIFT_PPM = 250;
+
+    private static final double DRIFT_TOLERANCE_PPM = 10;
+
+    private static final long RUN_MILLIS = 5000;
+
+    // ticks per second
+    private static final int VELOCITY = 3000;
+
+    private final SRSHubEmulator emulator = new SRSHubEmulator();
+
+    public void runOpMode() throws InterruptedException {
+        emulator.setClockDriftPpm(HUB_DRIFT_PPM);
+
+        // the hub samples on every READ, so each frame's timestamp falls within its read; with a sample timer of its
+        // own, reads that beat against the timer hide how old the freshest sample is, and the estimate wanders
+        emulator.setSampleIntervalMicros(0);
+
+        emulator.setWireTimeModel(
+                true,
+                300
+        );
+
+        // transport delays that read-time stamps would carry, but sample timestamps must not
+        emulator.setLatencySpikeMillis(3);
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.LATENCY_SPIKE,
+                0.02
+        );
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.setSampleTimestamps(true);
+
+        hub.init(config);
+
+        waitForStart();
+
+        long start = System.nanoTime();
+        long end = start + RUN_MILLIS * 1_000_000;
+
+        long lastSample = hub.sampleTimeNanos();
+        int fresh = 0;
+        int backwards = 0;
+
+        while (System.nanoTime() < end && opModeIsActive()) {
+            emulator.setEncoder(
+                    1,
+                    (int) ((System.nanoTime() - start) / 1e9 * VELOCITY),
+                    VELOCITY
+            );
+
+            hub.update();
+
+            if (!hub.fresh()) {
+                continue;
+            }
+
+            long sample = hub.sampleTimeNanos();
+
+            if (sample <= lastSample) {
+                backwards++;
+            }
+
+            lastSample = sample;
+            fresh++;
+        }
+
+        // the SRSHub reports how much faster the host clock runs, so a fast hub shows up as a negative drift
+        double expectedPpm = -HUB_DRIFT_PPM;
+
+        boolean passed = hub.sampleTimestamps() &&
+                Math.abs(hub.clockDriftPpm() - expectedPpm) <= DRIFT_TOLERANCE_PPM &&
+                backwards == 0 &&
+                fresh > 0;
+
+        String result = String.format(
+                "%s: sample timestamps %b; clock drift %.1f ppm against %.1f ppm configured, within %.0f ppm " +
+                        "required; %d fresh frames, %d with a sample time not after the one before",
+                passed ? "PASS" : "FAIL",
+                hub.sampleTimestamps(),
+                hub.clockDriftPpm(),
+                expectedPpm,
+                DRIFT_TOLERANCE_PPM,
+                fresh,
+                backwards
+        );
+
+        RobotLog.ii(
+                "SampleTimestampTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
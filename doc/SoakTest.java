@@ -0,0 +1,80 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubSoakHarness;
+
+@TeleOp(name = "SoakTest")
+public class SoakTest extends LinearOpMode {
+    private static final long DURATION_MILLIS = 60000;
+
+    public void runOpMode() throws InterruptedException {
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        // rates per READ; tune these to match the noise seen at events
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.CRC_CORRUPTION,
+                0.01
+        );
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.TRUNCATED_FRAME,
+                0.005
+        );
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.NULL_FRAME,
+                0.005
+        );
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.WRONG_DEVICE_ID,
+                0.005
+        );
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.LATENCY_SPIKE,
+                0.01
+        );
+
+        emulator.setFaultRate(
+                SRSHubEmulator.Fault.RESET,
+                0.0001
+        );
+
+        emulator.setLatencySpikeMillis(15);
+
+        SRSHubSoakHarness harness = new SRSHubSoakHarness(
+                emulator,
+                SRSHub.FrameLayout.PACKED
+        );
+
+        // let the SRSHub replay its configuration after a reset instead of waiting on a full init
+        harness
+                .hub()
+                .setAutoReconnect(10);
+
+        waitForStart();
+
+        telemetry.addLine("soaking for " + DURATION_MILLIS / 1000 + " s");
+        telemetry.update();
+
+        SRSHubSoakHarness.Report report = harness.run(DURATION_MILLIS);
+
+        RobotLog.ii(
+                "SoakTest",
+                report.toString()
+        );
+
+        telemetry.addLine(report.toString());
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.openftc.i2cdrivers.SRSHub;
+import org.openftc.i2cdrivers.SRSHubEmulator;
+import org.openftc.i2cdrivers.SRSHubTelemetry;
+import org.openftc.i2cdrivers.SRSHubTelemetryStreamer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+@TeleOp(name = "TelemetryStreamTest")
+public class TelemetryStreamTest extends LinearOpMode {
+    private static final int UPDATES = 10000;
+
+    private volatile long received = 0;
+    private volatile long mismatched = 0;
+
+    public void runOpMode() throws InterruptedException {
+        SRSHubEmulator emulator = new SRSHubEmulator();
+
+        SRSHub hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.QUADRATURE
+        );
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.GoBildaPinpoint(
+                        -50,
+                        -75,
+                        19.89f,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                )
+        );
+
+        hub.init(config);
+
+        // on a laptop the same receiver runs standalone; point the streamer at the laptop's address instead of
+        // loopback to tune against a live robot
+        final SRSHubTelemetry.Receiver receiver;
+
+        try {
+            receiver = SRSHubTelemetry.Receiver.udp(0);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        SRSHubTelemetryStreamer streamer = new SRSHubTelemetryStreamer(
+                hub,
+                new InetSocketAddress(
+                        "127.0.0.1",
+                        receiver.port()
+                ),
+                SRSHubTelemetryStreamer.Transport.UDP
+        );
+
+        Thread receiverThread = new Thread(
+                new Runnable() {
+                    public void run() {
+                        SRSHubTelemetry.Record record = new SRSHubTelemetry.Record();
+
+                        try {
+                            while (receiver.receive(record, 1000)) {
+                                SRSHubTelemetry.Device pinpoint = record.getDevice(
+                                        1,
+                                        SRSHubTelemetry.TYPE_GOBILDA_PINPOINT
+                                );
+
+                                // the x position is stamped with the update number below
+                                if (pinpoint == null || (long) pinpoint.floatValue(1) != record.encoderPositions[0]) {
+                                    mismatched++;
+                                }
+
+                                received++;
+                            }
+                        }
+                        catch (IOException e) {
+                            RobotLog.ee(
+                                    "TelemetryStreamTest",
+                                    e,
+                                    "receiver failed"
+                            );
+                        }
+                    }
+                }
+        );
+
+        waitForStart();
+
+        receiverThread.start();
+        streamer.start();
+
+        for (int i = 1; i <= UPDATES && opModeIsActive(); i++) {
+            emulator.setEncoder(
+                    1,
+                    i,
+                    0
+            );
+
+            emulator.setI2CDeviceField(
+                    1,
+                    SRSHub.GoBildaPinpoint.class,
+                    1,
+                    (float) i
+            );
+
+            hub.update();
+
+            streamer.capture();
+
+            sleep(1);
+        }
+
+        streamer.stop();
+        receiverThread.join();
+
+        try {
+            receiver.close();
+        }
+        catch (IOException e) {
+            // the test is over either way
+        }
+
+        String result = String.format(
+                "captured %d, sent %d in %d batches, dropped %d; received %d, lost %d, mismatched %d",
+                streamer.captured(),
+                streamer.sent(),
+                streamer.batches(),
+                streamer.dropped(),
+                received,
+                receiver.lostRecords(),
+                mismatched
+        );
+
+        RobotLog.ii(
+                "TelemetryStreamTest",
+                result
+        );
+
+        telemetry.addLine(result);
+        telemetry.update();
+
+        while (opModeIsActive()) {
+            idle();
+        }
+    }
+}
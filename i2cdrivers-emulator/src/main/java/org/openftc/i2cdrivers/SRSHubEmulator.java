@@ -0,0 +1,1284 @@
+package org.openftc.i2cdrivers;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.hardware.HardwareDevice;
+import com.qualcomm.robotcore.hardware.I2cAddr;
+import com.qualcomm.robotcore.hardware.I2cDeviceSynchSimple;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * a software model of the SRSHub firmware, for exercising the driver without hardware
+ * <p>
+ * the emulator decodes the INIT payload exactly as the hub does and serves READ frames built from the sensor values
+ * set on it; pass {@link #asDeviceClient()} to the SRSHub constructor to run the driver against it
+ */
+public class SRSHubEmulator {
+    private static final int DEVICE_TYPE_APDS9151 = 0;
+    private static final int DEVICE_TYPE_VL53L5CX = 1;
+    private static final int DEVICE_TYPE_VL53L0X = 2;
+    private static final int DEVICE_TYPE_GOBILDA_PINPOINT = 3;
+
+    // the readings of a physical sensor, which survive the hub being reset or reconfigured
+    private static class SensorState {
+        long[] fields = new long[0];
+
+        boolean disconnected = false;
+
+        long field(int index) {
+            return index < fields.length ? fields[index] : 0;
+        }
+
+        void setField(int index, long value) {
+            if (index >= fields.length) {
+                fields = Arrays.copyOf(
+                        fields,
+                        index + 1
+                );
+            }
+
+            fields[index] = value;
+        }
+    }
+
+    private static class EmulatedDevice {
+        final SRSHub.Layout layout;
+        final SensorState sensor;
+
+        EmulatedDevice(SRSHub.Layout layout, SensorState sensor) {
+            this.layout = layout;
+            this.sensor = sensor;
+        }
+    }
+
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int patchVersion;
+    private final int capabilities;
+
+    private boolean configured = false;
+
+    // the number of INITs taken since the last RESTART, reported through CONFIG_ID
+    private int initCount = 0;
+
+    // an in-place reconfiguration that has been written but not yet taken effect
+    private long reconfigureDelayNanos = 0;
+    private byte[] pendingInit;
+    private SRSHub.FrameLayout pendingFrameLayout;
+    private boolean pendingSampleTimestamps;
+    private long pendingInitNanos = 0;
+
+    private SRSHub.FrameLayout frameLayout = SRSHub.FrameLayout.PACKED;
+
+    // the negotiated delta frame length, or 0 while READ serves full frames
+    private int deltaLength = 0;
+
+    // whether frames end with the sample's timestamp, from a microsecond counter that starts at each reset and runs
+    // fast or slow by the clock drift
+    private boolean sampleTimestamps = false;
+    private long bootNanos;
+    private double clockDriftPpm = 0;
+
+    // the last frame served from KEYFRAME, which deltas are taken against
+    private byte[] deltaBase;
+    private int deltasSinceKeyframe = 0;
+    private int keyframeInterval = 50;
+
+    private final SRSHub.AnalogDigitalDevice[] analogDigitalDevices =
+            new SRSHub.AnalogDigitalDevice[12];
+
+    private final SRSHub.Encoder[] encoders = new SRSHub.Encoder[6];
+
+    private final ArrayList<EmulatedDevice>[] i2cBuses = new ArrayList[]{
+            new ArrayList<EmulatedDevice>(),
+            new ArrayList<EmulatedDevice>(),
+            new ArrayList<EmulatedDevice>()
+    };
+
+    private final SensorState[][] sensors = new SensorState[3][4];
+
+    private final int[] analogDigitalValues = new int[12];
+
+    private final int[] encoderPositions = new int[6];
+    private final int[] encoderVelocities = new int[6];
+    private final int[] reportedEncoderPositions = new int[6];
+
+    private long readCount = 0;
+    private long readNanos = 0;
+    private long wireNanos = 0;
+
+    // the hub samples its sensors on its own schedule and serves the latest sample to every READ in between
+    private long sampleIntervalNanos = 0;
+    private long lastSampleNanos = 0;
+    private byte[] sample;
+    private long sampleCount = 0;
+
+    /**
+     * a fault the emulator can inject into READ transactions
+     */
+    public enum Fault {
+        /**
+         * a single payload bit is flipped, so the CRC no longer matches
+         */
+        CRC_CORRUPTION,
+
+        /**
+         * fewer bytes than requested are returned
+         */
+        TRUNCATED_FRAME,
+
+        /**
+         * the read returns null, as the SDK does when a transaction fails
+         */
+        NULL_FRAME,
+
+        /**
+         * the device ID byte is corrupted
+         */
+        WRONG_DEVICE_ID,
+
+        /**
+         * the frame is intact but arrives late
+         */
+        LATENCY_SPIKE,
+
+        /**
+         * the hub reboots, losing its configuration, and answers with zeros until it is initialized again
+         */
+        RESET
+    }
+
+    private final Random random = new Random(0);
+
+    private final double[] faultRates = new double[Fault.values().length];
+    private final long[] faultCounts = new long[Fault.values().length];
+
+    private long latencySpikeMillis = 20;
+
+    // the Lynx module starts every port at 100 kHz until the driver changes it
+    private LynxI2cDeviceSynch.BusSpeed busSpeed = LynxI2cDeviceSynch.BusSpeed.STANDARD_100K;
+    private final double[] busSpeedErrorRates = new double[LynxI2cDeviceSynch.BusSpeed.values().length];
+
+    private boolean modelWireTime = false;
+    private double transactionOverheadMicros = 0;
+
+    private Fault lastFault = null;
+
+    /**
+     * creates an emulator of the newest firmware, which supports every frame layout, delta frames, sample timestamps
+     * and reconfiguring in place
+     */
+    public SRSHubEmulator() {
+        this(
+                SRSHub.DEVICE_MAJOR_VERSION,
+                SRSHub.CAPABILITIES_MINOR_VERSION,
+                0,
+                SRSHub.CAPABILITY_ALIGNED_LAYOUT | SRSHub.CAPABILITY_LIVE_INIT | SRSHub.CAPABILITY_DELTA_FRAMES |
+                        SRSHub.CAPABILITY_SAMPLE_TIMESTAMPS
+        );
+    }
+
+    /**
+     * @param majorVersion the reported firmware major version
+     * @param minorVersion the reported firmware minor version
+     * @param patchVersion the reported firmware patch version
+     * @param capabilities the capability bits reported by firmware that exposes the CAPABILITIES register
+     */
+    public SRSHubEmulator(
+            int majorVersion,
+            int minorVersion,
+            int patchVersion,
+            int capabilities
+    ) {
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.patchVersion = patchVersion;
+        this.capabilities = minorVersion >= SRSHub.CAPABILITIES_MINOR_VERSION ? capabilities : 0;
+
+        for (SensorState[] bus : sensors) {
+            for (int type = 0; type < bus.length; type++) {
+                bus[type] = new SensorState();
+            }
+        }
+
+        reset();
+    }
+
+    private void reset() {
+        configured = false;
+        initCount = 0;
+
+        pendingInit = null;
+        pendingFrameLayout = null;
+        frameLayout = SRSHub.FrameLayout.PACKED;
+
+        deltaLength = 0;
+        deltaBase = null;
+
+        sampleTimestamps = false;
+        bootNanos = System.nanoTime();
+
+        Arrays.fill(
+                analogDigitalDevices,
+                SRSHub.AnalogDigitalDevice.NONE
+        );
+
+        Arrays.fill(
+                encoders,
+                SRSHub.Encoder.NONE
+        );
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            bus.clear();
+        }
+
+        sample = null;
+
+        System.arraycopy(
+                encoderPositions,
+                0,
+                reportedEncoderPositions,
+                0,
+                encoderPositions.length
+        );
+    }
+
+    /**
+     * handles a register read issued by the driver
+     *
+     * @param register the register address
+     * @param length the number of bytes requested
+     *
+     * @return length bytes, unless a NULL_FRAME or TRUNCATED_FRAME fault was injected
+     */
+    public byte[] read(int register, int length) {
+        byte[] result;
+        long latencyMillis;
+        long wireNanos;
+
+        synchronized (this) {
+            long start = System.nanoTime();
+
+            if (pendingInit != null && start >= pendingInitNanos) {
+                applyPendingInit();
+            }
+
+            byte[] data;
+
+            Fault fault = null;
+
+            if (register == SRSHub.Register.DEVICE_INFO.address) {
+                data = new byte[]{
+                        0x61,
+                        (byte) majorVersion,
+                        (byte) minorVersion,
+                        (byte) patchVersion
+                };
+            }
+            else if (register == SRSHub.Register.CAPABILITIES.address &&
+                    minorVersion >= SRSHub.CAPABILITIES_MINOR_VERSION) {
+                data = new byte[]{
+                        (byte) capabilities,
+                        (byte) (capabilities >> 8),
+                        (byte) (capabilities >> 16),
+                        (byte) (capabilities >> 24)
+                };
+            }
+            else if (register == SRSHub.Register.CONFIG_ID.address &&
+                    (capabilities & SRSHub.CAPABILITY_LIVE_INIT) != 0) {
+                data = new byte[]{(byte) initCount};
+            }
+            else if (register == SRSHub.Register.READ.address && configured) {
+                fault = rollFault();
+
+                if (fault == null && random.nextDouble() < busSpeedErrorRates[busSpeed.ordinal()]) {
+                    fault = Fault.CRC_CORRUPTION;
+                }
+
+                if (fault == Fault.RESET) {
+                    reset();
+
+                    data = new byte[length];
+                }
+                else if (deltaLength > 0) {
+                    data = deltaFrame(sample(start));
+                }
+                else {
+                    data = sample(start);
+                }
+            }
+            else if (register == SRSHub.Register.KEYFRAME.address && configured && deltaLength > 0) {
+                // the sample the last delta frame was taken from, so that no quadrature counts are lost
+                data = sample == null ? sample(start) : sample;
+
+                deltaBase = data;
+                deltasSinceKeyframe = 0;
+            }
+            else {
+                data = new byte[length];
+            }
+
+            result = Arrays.copyOf(
+                    data,
+                    length
+            );
+
+            if (fault != null) {
+                result = injectFault(fault, result);
+
+                faultCounts[fault.ordinal()]++;
+            }
+
+            lastFault = fault;
+            latencyMillis = fault == Fault.LATENCY_SPIKE ? latencySpikeMillis : 0;
+            wireNanos = modelWireTime ? wireNanos(length) : 0;
+
+            readCount++;
+            readNanos += System.nanoTime() - start;
+            this.wireNanos += wireNanos;
+        }
+
+        if (wireNanos > 0) {
+            long end = System.nanoTime() + wireNanos;
+
+            while (System.nanoTime() < end) {
+                // spin; sleeping cannot resolve transfers this short
+            }
+        }
+
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return result;
+    }
+
+    private long wireNanos(int length) {
+        return (long) ((transactionOverheadMicros + SRSHub.BandwidthPlan.wireMicros(
+                length,
+                busSpeed
+        )) * 1000);
+    }
+
+    private byte[] sample(long now) {
+        // the hub stamps its samples in whole microseconds, so it never takes two within one; the driver would take
+        // the second for a repeat of the first and drop its quadrature deltas
+        if (sample == null ||
+                (now - lastSampleNanos >= sampleIntervalNanos && hubMicros(now) != hubMicros(lastSampleNanos))) {
+            // the hub samples on its own timer, so the sample belongs to the latest tick rather than to this READ
+            long sampled = sample == null || sampleIntervalNanos == 0 ? now :
+                    now - (now - lastSampleNanos) % sampleIntervalNanos;
+
+            sample = frameLayout == SRSHub.FrameLayout.ALIGNED ? buildAlignedFrame(sampled) : buildPackedFrame(sampled);
+
+            lastSampleNanos = sampled;
+            sampleCount++;
+        }
+
+        return sample;
+    }
+
+    // encodes a frame against the last keyframe, or asks for a keyframe read when the changes do not fit
+    private byte[] deltaFrame(byte[] frame) {
+        byte[] delta = new byte[deltaLength];
+
+        int blocks = SRSHub.deltaBlocks(frame.length);
+        int index = SRSHub.DELTA_HEADER_LENGTH + (blocks + 7) / 8;
+
+        byte[] base = deltaBase != null && deltaBase.length == frame.length ? deltaBase : null;
+
+        for (int i = 0; i < blocks && base != null; i++) {
+            int start = SRSHub.UPDATE_HEADER_LENGTH + i * SRSHub.DELTA_BLOCK_LENGTH;
+            int blockLength = Math.min(
+                    SRSHub.DELTA_BLOCK_LENGTH,
+                    frame.length - SRSHub.UPDATE_CRC_LENGTH - start
+            );
+
+            boolean changed = false;
+
+            for (int j = start; j < start + blockLength; j++) {
+                changed |= frame[j] != base[j];
+            }
+
+            if (!changed) {
+                continue;
+            }
+
+            if (index + blockLength <= deltaLength - SRSHub.DELTA_TRAILER_LENGTH) {
+                delta[SRSHub.DELTA_HEADER_LENGTH + (i >> 3)] |= (byte) (1 << (i & 7));
+
+                System.arraycopy(
+                        frame,
+                        start,
+                        delta,
+                        index,
+                        blockLength
+                );
+            }
+
+            index += blockLength;
+        }
+
+        int needed = index + SRSHub.DELTA_TRAILER_LENGTH;
+
+        boolean keyframe = base == null || needed > deltaLength || deltasSinceKeyframe >= keyframeInterval;
+
+        delta[0] = 0x61;
+        delta[1] = (byte) (keyframe ? SRSHub.DELTA_KIND_KEYFRAME : SRSHub.DELTA_KIND_DELTA);
+
+        // without a base the length a delta would need is unknown
+        delta[2] = (byte) (base == null ? 0 : Math.min(needed, 255));
+
+        if (keyframe) {
+            Arrays.fill(
+                    delta,
+                    SRSHub.DELTA_HEADER_LENGTH,
+                    deltaLength - SRSHub.DELTA_TRAILER_LENGTH,
+                    (byte) 0
+            );
+        }
+        else {
+            delta[3] = base[base.length - 2];
+            delta[4] = base[base.length - 1];
+
+            deltasSinceKeyframe++;
+        }
+
+        delta[deltaLength - 4] = frame[frame.length - 2];
+        delta[deltaLength - 3] = frame[frame.length - 1];
+
+        appendCRC(delta);
+
+        return delta;
+    }
+
+    private Fault rollFault() {
+        for (Fault fault : Fault.values()) {
+            double rate = faultRates[fault.ordinal()];
+
+            if (rate > 0 && random.nextDouble() < rate) {
+                return fault;
+            }
+        }
+
+        return null;
+    }
+
+    private byte[] injectFault(Fault fault, byte[] frame) {
+        switch (fault) {
+            case CRC_CORRUPTION:
+                // flip one bit of the payload between the device ID and the CRC
+                int payloadBits = Math.max(
+                        1,
+                        (frame.length - 3) * 8
+                );
+
+                int bit = 8 + random.nextInt(payloadBits);
+
+                frame[bit / 8] ^= (byte) (1 << (bit % 8));
+
+                return frame;
+            case TRUNCATED_FRAME:
+                return Arrays.copyOf(
+                        frame,
+                        random.nextInt(frame.length)
+                );
+            case NULL_FRAME:
+                return null;
+            case WRONG_DEVICE_ID:
+                frame[0] ^= (byte) (1 + random.nextInt(255));
+
+                return frame;
+            default:
+                return frame;
+        }
+    }
+
+    /**
+     * handles a register write issued by the driver
+     *
+     * @param register the register address
+     * @param data the bytes written
+     */
+    public synchronized void write(int register, byte[] data) {
+        // the firmware takes reconfigurations in order, so one still pending is finished before the next begins
+        if (pendingInit != null &&
+                (register == SRSHub.Register.FORMAT.address || register == SRSHub.Register.INIT.address)) {
+            applyPendingInit();
+        }
+
+        if (register == SRSHub.Register.RESTART.address) {
+            reset();
+        }
+        else if (register == SRSHub.Register.FORMAT.address &&
+                (capabilities & (SRSHub.CAPABILITY_ALIGNED_LAYOUT | SRSHub.CAPABILITY_DELTA_FRAMES |
+                        SRSHub.CAPABILITY_SAMPLE_TIMESTAMPS)) != 0) {
+            int format = data[0] & 0xFF & ~(SRSHub.FORMAT_DELTA_FLAG | SRSHub.FORMAT_TIMESTAMP_FLAG);
+
+            SRSHub.FrameLayout layout = format == SRSHub.FrameLayout.ALIGNED.value ?
+                    SRSHub.FrameLayout.ALIGNED : SRSHub.FrameLayout.PACKED;
+
+            boolean timestamps = (capabilities & SRSHub.CAPABILITY_SAMPLE_TIMESTAMPS) != 0 &&
+                    (data[0] & SRSHub.FORMAT_TIMESTAMP_FLAG) != 0;
+
+            int length = (capabilities & SRSHub.CAPABILITY_DELTA_FRAMES) != 0 &&
+                    (data[0] & SRSHub.FORMAT_DELTA_FLAG) != 0 &&
+                    data.length > 1 ? data[1] & 0xFF : 0;
+
+            if ((length > 0) != (deltaLength > 0)) {
+                deltaBase = null;
+            }
+
+            deltaLength = length;
+
+            if (reconfiguresLater()) {
+                pendingFrameLayout = layout;
+                pendingSampleTimestamps = timestamps;
+            }
+            else if (layout != frameLayout || timestamps != sampleTimestamps) {
+                frameLayout = layout;
+                sampleTimestamps = timestamps;
+
+                sample = null;
+            }
+        }
+        else if (register == SRSHub.Register.INIT.address) {
+            if (reconfiguresLater()) {
+                pendingInit = data.clone();
+                pendingInitNanos = System.nanoTime() + reconfigureDelayNanos;
+            }
+            else {
+                parseInit(data);
+            }
+        }
+    }
+
+    // whether a write to a running hub takes effect only after the reconfiguration delay
+    private boolean reconfiguresLater() {
+        return configured && reconfigureDelayNanos > 0 && (capabilities & SRSHub.CAPABILITY_LIVE_INIT) != 0;
+    }
+
+    private void applyPendingInit() {
+        if (pendingFrameLayout != null) {
+            frameLayout = pendingFrameLayout;
+            sampleTimestamps = pendingSampleTimestamps;
+        }
+
+        parseInit(pendingInit);
+
+        pendingInit = null;
+        pendingFrameLayout = null;
+    }
+
+    private void parseInit(byte[] data) {
+        int index = 0;
+
+        deltaBase = null;
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            bus.clear();
+        }
+
+        for (int i = 0; i < analogDigitalDevices.length; i++) {
+            analogDigitalDevices[i] = SRSHub.AnalogDigitalDevice.values()[(int) readBits(data, index, 2)];
+
+            index += 2;
+        }
+
+        for (int i = 0; i < encoders.length; i++) {
+            encoders[i] = SRSHub.Encoder.values()[(int) readBits(data, index, 2)];
+
+            index += 2;
+        }
+
+        for (int i = 0; i < i2cBuses.length; i++) {
+            int busLength = (int) readBits(data, index, 16);
+
+            index += 16;
+
+            int end = index + busLength;
+
+            while (index < end) {
+                int type = (int) readBits(data, index, 4);
+
+                index += 4;
+
+                SRSHub.I2CDevice prototype = prototype(
+                        type,
+                        readBits(data, index, 1) == 1
+                );
+
+                index += prototype.getInitLength();
+
+                i2cBuses[i].add(new EmulatedDevice(
+                        prototype.getLayout(),
+                        sensors[i][type]
+                ));
+            }
+        }
+
+        sample = null;
+        configured = true;
+
+        initCount++;
+    }
+
+    private static SRSHub.I2CDevice prototype(int type, boolean grid8x8) {
+        switch (type) {
+            case DEVICE_TYPE_APDS9151:
+                return new SRSHub.APDS9151();
+            case DEVICE_TYPE_VL53L5CX:
+                return new SRSHub.VL53L5CX(
+                        grid8x8 ? SRSHub.VL53L5CX.Resolution.GRID_8x8 : SRSHub.VL53L5CX.Resolution.GRID_4x4
+                );
+            case DEVICE_TYPE_VL53L0X:
+                return new SRSHub.VL53L0X();
+            case DEVICE_TYPE_GOBILDA_PINPOINT:
+                return new SRSHub.GoBildaPinpoint(
+                        0,
+                        0,
+                        0,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                );
+            default:
+                throw new IllegalArgumentException("Unknown I2C device type " + type);
+        }
+    }
+
+    private byte[] buildPackedFrame(long now) {
+        int length = 8;
+
+        for (SRSHub.AnalogDigitalDevice device : analogDigitalDevices) {
+            length += device == SRSHub.AnalogDigitalDevice.ANALOG ? 12 :
+                    device == SRSHub.AnalogDigitalDevice.DIGITAL ? 1 : 0;
+        }
+
+        for (SRSHub.Encoder encoder : encoders) {
+            length += encoder != SRSHub.Encoder.NONE ? 48 : 0;
+        }
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            for (EmulatedDevice device : bus) {
+                length += 1 + device.layout.packedLength;
+            }
+        }
+
+        byte[] frame = new byte[2 + (length + 7) / 8 + timestampLength()];
+
+        frame[0] = 0x61;
+
+        int index = 8;
+
+        for (int i = 0; i < analogDigitalDevices.length; i++) {
+            switch (analogDigitalDevices[i]) {
+                case ANALOG:
+                    writeBits(frame, index, 12, analogDigitalValues[i]);
+
+                    index += 12;
+
+                    break;
+                case DIGITAL:
+                    writeBits(frame, index++, 1, analogDigitalValues[i] != 0 ? 1 : 0);
+
+                    break;
+                case NONE:
+                    break;
+            }
+        }
+
+        for (int i = 0; i < encoders.length; i++) {
+            if (encoders[i] != SRSHub.Encoder.NONE) {
+                writeBits(frame, index, 16, encoderReport(i));
+                writeBits(frame, index + 16, 32, encoderVelocities[i]);
+
+                index += 48;
+            }
+        }
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            for (EmulatedDevice device : bus) {
+                writeBits(frame, index++, 1, device.sensor.disconnected ? 1 : 0);
+
+                for (int k = 0; k < device.layout.size(); k++) {
+                    writeBits(frame, index + device.layout.packedOffsets[k], device.layout.bits[k], device.sensor.field(k));
+                }
+
+                index += device.layout.packedLength;
+            }
+        }
+
+        appendTimestamp(
+                frame,
+                now
+        );
+
+        appendCRC(frame);
+
+        return frame;
+    }
+
+    private byte[] buildAlignedFrame(long now) {
+        int length = 5;
+
+        for (SRSHub.AnalogDigitalDevice device : analogDigitalDevices) {
+            length += device == SRSHub.AnalogDigitalDevice.ANALOG ? 2 : 0;
+        }
+
+        for (SRSHub.Encoder encoder : encoders) {
+            length += encoder != SRSHub.Encoder.NONE ? 6 : 0;
+        }
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            for (EmulatedDevice device : bus) {
+                length += device.layout.alignedLength;
+            }
+        }
+
+        byte[] frame = new byte[length + 2 + timestampLength()];
+
+        frame[0] = 0x61;
+
+        int flags = 0;
+        int index = 5;
+
+        for (int i = 0; i < analogDigitalDevices.length; i++) {
+            switch (analogDigitalDevices[i]) {
+                case ANALOG:
+                    writeBits(frame, index * 8, 16, analogDigitalValues[i]);
+
+                    index += 2;
+
+                    break;
+                case DIGITAL:
+                    flags |= (analogDigitalValues[i] != 0 ? 1 : 0) << i;
+
+                    break;
+                case NONE:
+                    break;
+            }
+        }
+
+        for (int i = 0; i < encoders.length; i++) {
+            if (encoders[i] != SRSHub.Encoder.NONE) {
+                writeBits(frame, index * 8, 16, encoderReport(i));
+                writeBits(frame, index * 8 + 16, 32, encoderVelocities[i]);
+
+                index += 6;
+            }
+        }
+
+        int deviceFlag = 12;
+
+        for (ArrayList<EmulatedDevice> bus : i2cBuses) {
+            for (EmulatedDevice device : bus) {
+                flags |= (device.sensor.disconnected ? 1 : 0) << deviceFlag++;
+
+                for (int k = 0; k < device.layout.size(); k++) {
+                    writeBits(
+                            frame,
+                            (index + device.layout.alignedOffsets[k]) * 8,
+                            device.layout.alignedBytes[k] * 8,
+                            device.sensor.field(k)
+                    );
+                }
+
+                index += device.layout.alignedLength;
+            }
+        }
+
+        writeBits(frame, 8, 32, flags);
+
+        appendTimestamp(
+                frame,
+                now
+        );
+
+        appendCRC(frame);
+
+        return frame;
+    }
+
+    private int encoderReport(int port) {
+        if (encoders[port] == SRSHub.Encoder.QUADRATURE) {
+            int delta = encoderPositions[port] - reportedEncoderPositions[port];
+
+            reportedEncoderPositions[port] = encoderPositions[port];
+
+            return delta;
+        }
+
+        return encoderPositions[port];
+    }
+
+    private int timestampLength() {
+        return sampleTimestamps ? SRSHub.SAMPLE_TIMESTAMP_LENGTH : 0;
+    }
+
+    private void appendTimestamp(byte[] frame, long now) {
+        if (sampleTimestamps) {
+            writeBits(
+                    frame,
+                    (frame.length - SRSHub.UPDATE_CRC_LENGTH - SRSHub.SAMPLE_TIMESTAMP_LENGTH) * 8,
+                    32,
+                    hubMicros(now)
+            );
+        }
+    }
+
+    // the hub's microsecond counter at the given host time
+    private long hubMicros(long now) {
+        return (long) ((now - bootNanos) * (1 + clockDriftPpm * 1e-6) / 1000);
+    }
+
+    private static void appendCRC(byte[] frame) {
+        int crc = SRSHub.computeCRC16(frame);
+
+        frame[frame.length - 2] = (byte) (crc >> 8);
+        frame[frame.length - 1] = (byte) crc;
+    }
+
+    private static long readBits(byte[] data, int start, int width) {
+        long value = 0;
+
+        for (int i = 0; i < width; i++) {
+            int bit = start + i;
+
+            if (bit / 8 < data.length && (data[bit / 8] >> (bit % 8) & 1) == 1) {
+                value |= 1L << i;
+            }
+        }
+
+        return value;
+    }
+
+    private static void writeBits(byte[] data, int start, int width, long value) {
+        for (int i = 0; i < width; i++) {
+            int bit = start + i;
+
+            if ((value >> i & 1) == 1) {
+                data[bit / 8] |= (byte) (1 << (bit % 8));
+            }
+            else {
+                data[bit / 8] &= (byte) ~(1 << (bit % 8));
+            }
+        }
+    }
+
+    /**
+     * sets the raw value of an analog-digital pin
+     *
+     * @param pin the pin, from 1 to 12
+     * @param value the raw reading; from 0 to 4095 for analog pins and 0 or 1 for digital pins
+     */
+    public synchronized void setAnalogDigitalValue(int pin, int value) {
+        analogDigitalValues[pin - 1] = value;
+    }
+
+    /**
+     * sets the state of an encoder; quadrature ports report the change in position since the previous READ
+     *
+     * @param port the port, from 1 to 6
+     * @param position the absolute position in ticks, or the pulse width for PWM encoders
+     * @param velocity the velocity
+     */
+    public synchronized void setEncoder(int port, int position, int velocity) {
+        encoderPositions[port - 1] = position;
+        encoderVelocities[port - 1] = velocity;
+    }
+
+    /**
+     * sets whether the emulated I2C device reports itself as disconnected; sensor state is kept while the device is not
+     * configured, and takes effect once it is
+     *
+     * @param bus the bus, from 1 to 3
+     * @param deviceClass the type of the device
+     * @param disconnected whether the device is disconnected
+     */
+    public synchronized void setI2CDeviceDisconnected(
+            int bus,
+            Class<? extends SRSHub.I2CDevice> deviceClass,
+            boolean disconnected
+    ) {
+        sensors[bus - 1][deviceType(deviceClass)].disconnected = disconnected;
+    }
+
+    /**
+     * sets a raw field of an emulated I2C device
+     *
+     * @param bus the bus, from 1 to 3
+     * @param deviceClass the type of the device
+     * @param field the index of the value in the device's layout, with arrays expanded element by element
+     * @param value the raw bits of the field
+     */
+    public synchronized void setI2CDeviceField(
+            int bus,
+            Class<? extends SRSHub.I2CDevice> deviceClass,
+            int field,
+            long value
+    ) {
+        sensors[bus - 1][deviceType(deviceClass)].setField(field, value);
+    }
+
+    /**
+     * sets a 32-bit float field of an emulated I2C device
+     *
+     * @param bus the bus, from 1 to 3
+     * @param deviceClass the type of the device
+     * @param field the index of the field
+     * @param value the value of the field
+     */
+    public synchronized void setI2CDeviceField(
+            int bus,
+            Class<? extends SRSHub.I2CDevice> deviceClass,
+            int field,
+            float value
+    ) {
+        sensors[bus - 1][deviceType(deviceClass)].setField(field, Float.floatToIntBits(value));
+    }
+
+    private static int deviceType(Class<? extends SRSHub.I2CDevice> deviceClass) {
+        if (deviceClass == SRSHub.APDS9151.class) {
+            return DEVICE_TYPE_APDS9151;
+        }
+
+        if (deviceClass == SRSHub.VL53L5CX.class) {
+            return DEVICE_TYPE_VL53L5CX;
+        }
+
+        if (deviceClass == SRSHub.VL53L0X.class) {
+            return DEVICE_TYPE_VL53L0X;
+        }
+
+        if (deviceClass == SRSHub.GoBildaPinpoint.class) {
+            return DEVICE_TYPE_GOBILDA_PINPOINT;
+        }
+
+        throw new IllegalArgumentException("Unknown I2C device " + deviceClass.getName());
+    }
+
+    /**
+     * sets the probability with which each READ suffers a fault; at most one fault is injected per READ
+     *
+     * @param fault the fault
+     * @param probability the probability per READ, from 0 to 1
+     */
+    public synchronized void setFaultRate(Fault fault, double probability) {
+        faultRates[fault.ordinal()] = probability;
+    }
+
+    /**
+     * @param millis how long a LATENCY_SPIKE delays its READ, in milliseconds
+     */
+    public synchronized void setLatencySpikeMillis(long millis) {
+        latencySpikeMillis = millis;
+    }
+
+    /**
+     * sets how often the hub refreshes the frame it serves, on a timer of its own; READs issued between two ticks
+     * receive an identical copy of the last refresh, with quadrature deltas measured from the refresh before
+     *
+     * @param micros the refresh interval in microseconds; 0, the default, refreshes on every READ
+     */
+    public synchronized void setSampleIntervalMicros(long micros) {
+        sampleIntervalNanos = micros * 1000;
+    }
+
+    /**
+     * makes the hub's microsecond counter, which timestamps its samples, run fast or slow against System.nanoTime
+     *
+     * @param ppm how much faster the hub's clock runs, in parts per million; negative for slower
+     */
+    public synchronized void setClockDriftPpm(double ppm) {
+        clockDriftPpm = ppm;
+    }
+
+    /**
+     * @return whether the hub ends its frames with sample timestamps, as negotiated through FORMAT
+     */
+    public synchronized boolean sampleTimestamps() {
+        return sampleTimestamps;
+    }
+
+    /**
+     * models a bus that degrades at higher speeds: each READ at the speed has its CRC corrupted with the given
+     * probability, on top of any fault injected by setFaultRate
+     *
+     * @param busSpeed the bus speed
+     * @param probability the probability per READ, from 0 to 1
+     */
+    public synchronized void setBusSpeedErrorRate(LynxI2cDeviceSynch.BusSpeed busSpeed, double probability) {
+        busSpeedErrorRates[busSpeed.ordinal()] = probability;
+    }
+
+    /**
+     * makes every register read take as long as it would on the wire at the current bus speed, plus a fixed
+     * per-transaction overhead
+     *
+     * @param enabled whether to model wire time; off by default, so reads return as fast as they are built
+     * @param transactionOverheadMicros the time added to every read for the transaction itself, in microseconds
+     */
+    public synchronized void setWireTimeModel(boolean enabled, double transactionOverheadMicros) {
+        modelWireTime = enabled;
+        this.transactionOverheadMicros = transactionOverheadMicros;
+    }
+
+    /**
+     * sets the bus speed, as the driver does through the device client
+     *
+     * @param busSpeed the bus speed
+     */
+    public synchronized void setBusSpeed(LynxI2cDeviceSynch.BusSpeed busSpeed) {
+        this.busSpeed = busSpeed;
+    }
+
+    /**
+     * @return the bus speed most recently set by the driver
+     */
+    public synchronized LynxI2cDeviceSynch.BusSpeed busSpeed() {
+        return busSpeed;
+    }
+
+    /**
+     * reseeds the random source used for fault injection, so runs can be repeated exactly
+     *
+     * @param seed the seed
+     */
+    public synchronized void setFaultSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * @return the fault injected into the most recent read, or null if it was served normally
+     */
+    public synchronized Fault lastFault() {
+        return lastFault;
+    }
+
+    /**
+     * @param fault the fault
+     *
+     * @return the number of times the fault has been injected
+     */
+    public synchronized long faultCount(Fault fault) {
+        return faultCounts[fault.ordinal()];
+    }
+
+    /**
+     * makes an INIT written to a running hub take effect only after a delay, as the firmware restarts its sensors;
+     * until then READ keeps serving frames of the previous configuration and CONFIG_ID keeps reporting it. a FORMAT or
+     * INIT written while one is pending makes the pending one take effect first
+     *
+     * @param delayMicros the delay, in microseconds; 0 applies INIT immediately
+     */
+    public synchronized void setReconfigureDelayMicros(long delayMicros) {
+        reconfigureDelayNanos = delayMicros * 1000;
+    }
+
+    /**
+     * sets how many delta frames the hub sends before forcing a keyframe, bounding how long a host that has lost
+     * track of the keyframe can go without resynchronizing
+     *
+     * @param interval the number of delta frames between keyframes
+     */
+    public synchronized void setKeyframeInterval(int interval) {
+        keyframeInterval = interval;
+    }
+
+    /**
+     * @return the delta frame length negotiated by the driver, or 0 if READ serves full frames
+     */
+    public synchronized int deltaLength() {
+        return deltaLength;
+    }
+
+    /**
+     * @return the number of INITs taken since the last RESTART
+     */
+    public synchronized int initCount() {
+        return initCount;
+    }
+
+    /**
+     * @return whether an INIT has been received since the last RESTART
+     */
+    public synchronized boolean configured() {
+        return configured;
+    }
+
+    /**
+     * @return the frame layout selected by the driver
+     */
+    public synchronized SRSHub.FrameLayout frameLayout() {
+        return frameLayout;
+    }
+
+    /**
+     * @return the number of register reads served
+     */
+    public synchronized long readCount() {
+        return readCount;
+    }
+
+    /**
+     * @return the number of frames the hub has sampled, which is at most the number of READs served
+     */
+    public synchronized long sampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the total time spent building register reads, in nanoseconds; subtract this from driver timings to
+     *     isolate decoding
+     */
+    public synchronized long readNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return the total time register reads have spent on the modeled wire, in nanoseconds; always 0 while the wire
+     *     time model is off
+     */
+    public synchronized long wireNanos() {
+        return wireNanos;
+    }
+
+    /**
+     * wraps the emulator in an I2C device client that can be passed to the SRSHub constructor
+     *
+     * @return a device client whose register reads and writes are served by this emulator; it is also an
+     *     {@link SRSHub.BusSpeedControl}, so bus speed changes reach the emulator
+     */
+    public I2cDeviceSynchSimple asDeviceClient() {
+        return (I2cDeviceSynchSimple) Proxy.newProxyInstance(
+                I2cDeviceSynchSimple.class.getClassLoader(),
+                new Class<?>[]{I2cDeviceSynchSimple.class, SRSHub.BusSpeedControl.class},
+                new DeviceClientHandler()
+        );
+    }
+
+    private class DeviceClientHandler implements InvocationHandler {
+        private I2cAddr i2cAddress = I2cAddr.create7bit(0x57);
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            int argCount = args == null ? 0 : args.length;
+
+            if (name.equals("read") && argCount == 2) {
+                return read(
+                        (Integer) args[0],
+                        (Integer) args[1]
+                );
+            }
+
+            if (name.equals("read8") && argCount == 1) {
+                return read(
+                        (Integer) args[0],
+                        1
+                )[0];
+            }
+
+            if (name.equals("write") && argCount >= 2 && args[1] instanceof byte[]) {
+                write(
+                        (Integer) args[0],
+                        (byte[]) args[1]
+                );
+
+                return null;
+            }
+
+            if (name.equals("write8") && argCount >= 2) {
+                write(
+                        (Integer) args[0],
+                        new byte[]{((Integer) args[1]).byteValue()}
+                );
+
+                return null;
+            }
+
+            if (name.equals("setBusSpeed") && argCount == 1) {
+                setBusSpeed((LynxI2cDeviceSynch.BusSpeed) args[0]);
+
+                return null;
+            }
+
+            if ((name.equals("setI2cAddress") || name.equals("setI2cAddr")) && argCount == 1) {
+                i2cAddress = (I2cAddr) args[0];
+
+                return null;
+            }
+
+            if (name.equals("getI2cAddress") || name.equals("getI2cAddr")) {
+                return i2cAddress;
+            }
+
+            if (name.equals("getManufacturer")) {
+                return HardwareDevice.Manufacturer.Other;
+            }
+
+            if (name.equals("getDeviceName") || name.equals("getConnectionInfo") || name.equals("toString")) {
+                return "SRSHubEmulator";
+            }
+
+            if (name.equals("isArmed")) {
+                return true;
+            }
+
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+
+        if (type == short.class) {
+            return (short) 0;
+        }
+
+        if (type == int.class) {
+            return 0;
+        }
+
+        if (type == long.class) {
+            return 0L;
+        }
+
+        if (type == float.class) {
+            return 0f;
+        }
+
+        if (type == double.class) {
+            return 0d;
+        }
+
+        if (type == char.class) {
+            return (char) 0;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,278 @@
+package org.openftc.i2cdrivers;
+
+import java.util.ArrayList;
+
+/**
+ * drives SRSHub.init() and update() against an SRSHubEmulator injecting faults, and checks every value that reaches the
+ * public readers
+ * <p>
+ * each update stamps a step number into an analog pin, a PWM encoder and the Pinpoint x position; after the update
+ * the readers must either report disconnected() or hold the values of exactly that step. values from an earlier step
+ * count as stale, and values that disagree with each other or match no step count as garbage
+ */
+public class SRSHubSoakHarness {
+    private static final int FAULT_COUNT = SRSHubEmulator.Fault.values().length;
+
+    private final SRSHubEmulator emulator;
+    private final SRSHub hub;
+    private final SRSHub.Config config;
+
+    private int reinitializeAfterDisconnects = 0;
+
+    /**
+     * the results of a soak run
+     */
+    public static class Report {
+        public long updates;
+        public double updatesPerSecond;
+
+        /**
+         * updates after which the readers held the values of the current step
+         */
+        public long freshUpdates;
+
+        /**
+         * updates after which disconnected() was true
+         */
+        public long disconnectedUpdates;
+
+        /**
+         * updates after which disconnected() was false but the readers held an earlier step
+         */
+        public long staleUpdates;
+
+        /**
+         * updates after which disconnected() was false and the readers held inconsistent or impossible values
+         */
+        public long garbageUpdates;
+
+        public long reinitializations;
+
+        /**
+         * reconnections performed by the SRSHub itself, when automatic reconnection is enabled on hub()
+         */
+        public long reconnects;
+
+        /**
+         * per fault, indexed by SRSHubEmulator.Fault ordinal
+         */
+        public final long[] injected = new long[FAULT_COUNT];
+        public final long[] recovered = new long[FAULT_COUNT];
+        public final double[] meanRecoveryMillis = new double[FAULT_COUNT];
+        public final double[] maxRecoveryMillis = new double[FAULT_COUNT];
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+
+            builder.append(String.format(
+                    "%d updates (%.0f/s): %d fresh, %d disconnected, %d stale, %d garbage, %d reinitializations, " +
+                            "%d reconnects\n",
+                    updates,
+                    updatesPerSecond,
+                    freshUpdates,
+                    disconnectedUpdates,
+                    staleUpdates,
+                    garbageUpdates,
+                    reinitializations,
+                    reconnects
+            ));
+
+            for (SRSHubEmulator.Fault fault : SRSHubEmulator.Fault.values()) {
+                int i = fault.ordinal();
+
+                if (injected[i] > 0) {
+                    builder.append(String.format(
+                            "%s: %d injected, %d recovered, mean %.1f ms, max %.1f ms\n",
+                            fault,
+                            injected[i],
+                            recovered[i],
+                            meanRecoveryMillis[i],
+                            maxRecoveryMillis[i]
+                    ));
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * @param emulator the emulator to run against; configure its fault rates before calling run
+     * @param frameLayout the frame layout to request
+     */
+    public SRSHubSoakHarness(SRSHubEmulator emulator, SRSHub.FrameLayout frameLayout) {
+        this.emulator = emulator;
+
+        hub = new SRSHub(
+                emulator.asDeviceClient(),
+                true
+        );
+
+        config = new SRSHub.Config();
+
+        config.setAnalogDigitalDevice(
+                1,
+                SRSHub.AnalogDigitalDevice.ANALOG
+        );
+
+        config.setEncoder(
+                1,
+                SRSHub.Encoder.PWM
+        );
+
+        config.addI2CDevice(
+                1,
+                new SRSHub.GoBildaPinpoint(
+                        0,
+                        0,
+                        1,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD,
+                        SRSHub.GoBildaPinpoint.EncoderDirection.FORWARD
+                )
+        );
+
+        config.setFrameLayout(frameLayout);
+    }
+
+    /**
+     * models user code that calls init again after a run of failed updates; 0, the default, never does
+     *
+     * @param updates the number of consecutive disconnected updates after which init is called again
+     */
+    public void setReinitializeAfterDisconnects(int updates) {
+        reinitializeAfterDisconnects = updates;
+    }
+
+    /**
+     * @return the SRSHub under test
+     */
+    public SRSHub hub() {
+        return hub;
+    }
+
+    /**
+     * initializes the SRSHub, then updates it as fast as possible for the given duration
+     *
+     * @param durationMillis how long to update for, not counting the initial init
+     *
+     * @return the results of the run
+     */
+    public Report run(long durationMillis) {
+        Report report = new Report();
+
+        hub.init(config);
+
+        SRSHub.GoBildaPinpoint pinpoint = hub.getI2CDevice(
+                1,
+                SRSHub.GoBildaPinpoint.class
+        );
+
+        ArrayList<Long>[] pending = new ArrayList[FAULT_COUNT];
+        double[] totalRecoveryMillis = new double[FAULT_COUNT];
+
+        for (int i = 0; i < FAULT_COUNT; i++) {
+            pending[i] = new ArrayList<>();
+        }
+
+        int consecutiveDisconnects = 0;
+
+        long step = 0;
+        long start = System.nanoTime();
+        long end = start + durationMillis * 1_000_000;
+
+        while (System.nanoTime() < end) {
+            step++;
+
+            emulator.setAnalogDigitalValue(
+                    1,
+                    (int) (step % 4096)
+            );
+
+            emulator.setEncoder(
+                    1,
+                    (int) (step & 0x7FFF),
+                    0
+            );
+
+            emulator.setI2CDeviceField(
+                    1,
+                    SRSHub.GoBildaPinpoint.class,
+                    1,
+                    (float) step
+            );
+
+            long updateStart = System.nanoTime();
+
+            hub.update();
+
+            report.updates++;
+
+            SRSHubEmulator.Fault fault = emulator.lastFault();
+
+            if (fault != null) {
+                report.injected[fault.ordinal()]++;
+                pending[fault.ordinal()].add(updateStart);
+            }
+
+            if (hub.disconnected()) {
+                report.disconnectedUpdates++;
+
+                if (reinitializeAfterDisconnects > 0 && ++consecutiveDisconnects >= reinitializeAfterDisconnects) {
+                    hub.init(config);
+
+                    report.reinitializations++;
+                    consecutiveDisconnects = 0;
+                }
+
+                continue;
+            }
+
+            consecutiveDisconnects = 0;
+
+            long reported = (long) pinpoint.xPosition;
+
+            boolean consistent = pinpoint.xPosition == reported &&
+                    reported >= 0 &&
+                    reported <= step &&
+                    Math.round(hub.readAnalogDigitalDevice(1) * 4095) == reported % 4096 &&
+                    hub.readEncoder(1).position == (reported & 0x7FFF);
+
+            if (!consistent) {
+                report.garbageUpdates++;
+            }
+            else if (reported < step) {
+                report.staleUpdates++;
+            }
+            else {
+                report.freshUpdates++;
+
+                long now = System.nanoTime();
+
+                for (int i = 0; i < FAULT_COUNT; i++) {
+                    for (long injectedAt : pending[i]) {
+                        double recoveryMillis = (now - injectedAt) / 1e6;
+
+                        report.recovered[i]++;
+                        totalRecoveryMillis[i] += recoveryMillis;
+
+                        report.maxRecoveryMillis[i] = Math.max(
+                                report.maxRecoveryMillis[i],
+                                recoveryMillis
+                        );
+                    }
+
+                    pending[i].clear();
+                }
+            }
+        }
+
+        report.updatesPerSecond = report.updates / ((System.nanoTime() - start) / 1e9);
+        report.reconnects = hub.reconnects();
+
+        for (int i = 0; i < FAULT_COUNT; i++) {
+            report.meanRecoveryMillis[i] = report.recovered[i] > 0 ? totalRecoveryMillis[i] / report.recovered[i] : 0;
+        }
+
+        return report;
+    }
+}
@@ -0,0 +1,485 @@
+package org.openftc.i2cdrivers;
+
+import java.util.Arrays;
+
+/**
+ * a preallocated buffer for a burst capture of encoder and analog samples, filled by
+ * {@link SRSHub#capture(SRSHubCapture, long)} for offline system identification
+ * <p>
+ * the channels are chosen with {@link #addEncoder(int)} and {@link #addAnalogPin(int)} before the first capture; the
+ * capture then reads a frame holding only those channels back to back, storing every new sample with the time it was
+ * sampled. the results are copied out as arrays of exactly the captured length
+ */
+public class SRSHubCapture {
+    /**
+     * an interval between samples longer than this many times the median interval counts as a gap
+     */
+    public static final double GAP_FACTOR = 2;
+
+    private final int capacity;
+
+    private final long[] timestamps;
+
+    private int[] encoderPorts = new int[0];
+    private long[][] encoderPositions = new long[0][];
+    private int[][] encoderVelocities = new int[0][];
+
+    private int[] analogPins = new int[0];
+    private int[][] analogValues = new int[0][];
+
+    // the profile read during the capture, and the Config it was built against
+    private SRSHub.Config burstConfig;
+    private SRSHub.Config baseConfig;
+
+    private int samples = 0;
+    private long reads = 0;
+    private long failedReads = 0;
+    private long duplicateReads = 0;
+    private long durationNanos = 0;
+    private boolean truncated = false;
+
+    private double medianIntervalMicros = 0;
+    private double largestIntervalMicros = 0;
+    private int[] gapIndices = new int[0];
+
+    /**
+     * @param capacity the most samples a capture stores; the capture ends early once it is full
+     *
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SRSHubCapture(int capacity) {
+        if (capacity < 1) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Capture capacity must be positive"
+            );
+        }
+
+        this.capacity = capacity;
+
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * captures the position and velocity of an encoder port, which must be configured in the SRSHub's current Config
+     *
+     * @param port the port, from 1 to 6
+     *
+     * @throws IndexOutOfBoundsException if the port is not between 1 and 6, inclusive
+     * @throws IllegalStateException if the capture has already run
+     */
+    public void addEncoder(int port) {
+        if (port < 1 || port > 6) {
+            SRSHub.throwException(
+                    IndexOutOfBoundsException.class,
+                    "Encoder port must be from 1 to 6"
+            );
+        }
+
+        checkUnused();
+
+        if (indexOf(encoderPorts, port) >= 0) {
+            return;
+        }
+
+        encoderPorts = append(
+                encoderPorts,
+                port
+        );
+
+        encoderPositions = Arrays.copyOf(
+                encoderPositions,
+                encoderPorts.length
+        );
+
+        encoderVelocities = Arrays.copyOf(
+                encoderVelocities,
+                encoderPorts.length
+        );
+
+        encoderPositions[encoderPorts.length - 1] = new long[capacity];
+        encoderVelocities[encoderPorts.length - 1] = new int[capacity];
+    }
+
+    /**
+     * captures the 12-bit readings of an analog pin, which must be configured as ANALOG in the SRSHub's current Config
+     *
+     * @param pin the pin, from 1 to 12
+     *
+     * @throws IndexOutOfBoundsException if the pin is not between 1 and 12, inclusive
+     * @throws IllegalStateException if the capture has already run
+     */
+    public void addAnalogPin(int pin) {
+        if (pin < 1 || pin > 12) {
+            SRSHub.throwException(
+                    IndexOutOfBoundsException.class,
+                    "AnalogDigitalDevice pin must be from 1 to 12"
+            );
+        }
+
+        checkUnused();
+
+        if (indexOf(analogPins, pin) >= 0) {
+            return;
+        }
+
+        analogPins = append(
+                analogPins,
+                pin
+        );
+
+        analogValues = Arrays.copyOf(
+                analogValues,
+                analogPins.length
+        );
+
+        analogValues[analogPins.length - 1] = new int[capacity];
+    }
+
+    private void checkUnused() {
+        if (burstConfig != null) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "Capture channels cannot be changed after the first capture"
+            );
+        }
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] appended = Arrays.copyOf(
+                values,
+                values.length + 1
+        );
+
+        appended[values.length] = value;
+
+        return appended;
+    }
+
+    /**
+     * builds the profile holding only the captured channels, plus any encoder ports the odometry integrates, with the
+     * encoder types of the Config it replaces; it is built once per base Config
+     */
+    SRSHub.Config burstConfig(SRSHub.Config base, int[] odometryPorts) {
+        if (base == baseConfig) {
+            return burstConfig;
+        }
+
+        if (encoderPorts.length == 0 && analogPins.length == 0) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "A capture needs at least one encoder or analog pin"
+            );
+        }
+
+        SRSHub.Config config = new SRSHub.Config();
+
+        for (int port : encoderPorts) {
+            if (base.encoders[port - 1] == SRSHub.Encoder.NONE) {
+                SRSHub.throwException(
+                        IllegalStateException.class,
+                        "Encoder port #" + port + " was not configured"
+                );
+            }
+
+            config.setEncoder(
+                    port,
+                    base.encoders[port - 1]
+            );
+        }
+
+        for (int port : odometryPorts) {
+            config.setEncoder(
+                    port,
+                    SRSHub.Encoder.QUADRATURE
+            );
+        }
+
+        for (int pin : analogPins) {
+            if (base.analogDigitalDevices[pin - 1] != SRSHub.AnalogDigitalDevice.ANALOG) {
+                SRSHub.throwException(
+                        IllegalStateException.class,
+                        "AnalogDigitalDevice pin #" + pin + " was not configured as ANALOG"
+                );
+            }
+
+            config.setAnalogDigitalDevice(
+                    pin,
+                    SRSHub.AnalogDigitalDevice.ANALOG
+            );
+        }
+
+        config.setSampleTimestamps(base.sampleTimestamps);
+
+        baseConfig = base;
+        burstConfig = config;
+
+        return config;
+    }
+
+    void start() {
+        samples = 0;
+        reads = 0;
+        failedReads = 0;
+        duplicateReads = 0;
+        truncated = false;
+    }
+
+    boolean full() {
+        return samples == capacity;
+    }
+
+    void failedRead() {
+        reads++;
+        failedReads++;
+    }
+
+    void duplicateRead() {
+        reads++;
+        duplicateReads++;
+    }
+
+    void record(long frameNanos, SRSHub.PosVel[] encoders, int[] analogRaw) {
+        reads++;
+
+        timestamps[samples] = frameNanos;
+
+        for (int i = 0; i < encoderPorts.length; i++) {
+            SRSHub.PosVel encoder = encoders[encoderPorts[i] - 1];
+
+            encoderPositions[i][samples] = encoder.longPosition;
+            encoderVelocities[i][samples] = encoder.velocity;
+        }
+
+        for (int i = 0; i < analogPins.length; i++) {
+            analogValues[i][samples] = analogRaw[analogPins[i] - 1];
+        }
+
+        samples++;
+    }
+
+    // finds the gaps once the capture is over, so that none of this runs between reads
+    void finish(long durationNanos) {
+        this.durationNanos = durationNanos;
+
+        truncated = full();
+
+        medianIntervalMicros = 0;
+        largestIntervalMicros = 0;
+        gapIndices = new int[0];
+
+        if (samples < 2) {
+            return;
+        }
+
+        long[] intervals = new long[samples - 1];
+
+        for (int i = 1; i < samples; i++) {
+            intervals[i - 1] = timestamps[i] - timestamps[i - 1];
+        }
+
+        long[] sorted = intervals.clone();
+
+        Arrays.sort(sorted);
+
+        medianIntervalMicros = sorted[sorted.length / 2] / 1e3;
+        largestIntervalMicros = sorted[sorted.length - 1] / 1e3;
+
+        int gaps = 0;
+
+        for (long interval : intervals) {
+            if (interval / 1e3 > GAP_FACTOR * medianIntervalMicros) {
+                gaps++;
+            }
+        }
+
+        gapIndices = new int[gaps];
+
+        gaps = 0;
+
+        for (int i = 0; i < intervals.length; i++) {
+            if (intervals[i] / 1e3 > GAP_FACTOR * medianIntervalMicros) {
+                gapIndices[gaps++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of samples stored by the most recent capture
+     */
+    public int samples() {
+        return samples;
+    }
+
+    /**
+     * @return the System.nanoTime at which each sample was taken, see {@link SRSHub#sampleTimeNanos()}
+     */
+    public long[] timestampsNanos() {
+        return Arrays.copyOf(
+                timestamps,
+                samples
+        );
+    }
+
+    /**
+     * @return the time of each sample in seconds after the first
+     */
+    public double[] timesSeconds() {
+        double[] times = new double[samples];
+
+        for (int i = 0; i < samples; i++) {
+            times[i] = (timestamps[i] - timestamps[0]) / 1e9;
+        }
+
+        return times;
+    }
+
+    /**
+     * @param port the encoder port, from 1 to 6
+     *
+     * @return the position of the encoder at each sample
+     *
+     * @throws IllegalArgumentException if the port was not added to the capture
+     */
+    public long[] encoderPositions(int port) {
+        return Arrays.copyOf(
+                encoderPositions[encoderIndex(port)],
+                samples
+        );
+    }
+
+    /**
+     * @param port the encoder port, from 1 to 6
+     *
+     * @return the velocity the hub reported for the encoder at each sample, in ticks per second
+     *
+     * @throws IllegalArgumentException if the port was not added to the capture
+     */
+    public int[] encoderVelocities(int port) {
+        return Arrays.copyOf(
+                encoderVelocities[encoderIndex(port)],
+                samples
+        );
+    }
+
+    /**
+     * @param pin the analog pin, from 1 to 12
+     *
+     * @return the 12-bit reading of the pin at each sample, from 0 to 4095
+     *
+     * @throws IllegalArgumentException if the pin was not added to the capture
+     */
+    public int[] analogValues(int pin) {
+        int index = indexOf(
+                analogPins,
+                pin
+        );
+
+        if (index < 0) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "AnalogDigitalDevice pin #" + pin + " was not captured"
+            );
+        }
+
+        return Arrays.copyOf(
+                analogValues[index],
+                samples
+        );
+    }
+
+    private int encoderIndex(int port) {
+        int index = indexOf(
+                encoderPorts,
+                port
+        );
+
+        if (index < 0) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Encoder port #" + port + " was not captured"
+            );
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the samples stored per second over the time between the first and last sample
+     */
+    public double sampleRateHz() {
+        if (samples < 2) {
+            return 0;
+        }
+
+        return (samples - 1) / ((timestamps[samples - 1] - timestamps[0]) / 1e9);
+    }
+
+    /**
+     * @return the median time between consecutive samples
+     */
+    public double medianIntervalMicros() {
+        return medianIntervalMicros;
+    }
+
+    /**
+     * @return the longest time between consecutive samples
+     */
+    public double largestIntervalMicros() {
+        return largestIntervalMicros;
+    }
+
+    /**
+     * @return the index of each sample that followed a gap, an interval longer than {@link #GAP_FACTOR} times the
+     *     median
+     */
+    public int[] gapIndices() {
+        return gapIndices.clone();
+    }
+
+    /**
+     * @return the number of reads made by the most recent capture, including failed and repeated ones
+     */
+    public long reads() {
+        return reads;
+    }
+
+    /**
+     * @return the number of reads that failed, whether from a missing frame or a CRC mismatch
+     */
+    public long failedReads() {
+        return failedReads;
+    }
+
+    /**
+     * @return the number of reads that returned a frame the hub had already served, because it had not yet sampled
+     *     again
+     */
+    public long duplicateReads() {
+        return duplicateReads;
+    }
+
+    /**
+     * @return the time spent reading, excluding the profile switches on either side
+     */
+    public double durationSeconds() {
+        return durationNanos / 1e9;
+    }
+
+    /**
+     * @return whether the capture ended because the buffer was full, before its duration was up
+     */
+    public boolean truncated() {
+        return truncated;
+    }
+}
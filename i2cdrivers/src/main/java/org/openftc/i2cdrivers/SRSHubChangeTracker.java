@@ -0,0 +1,427 @@
+package org.openftc.i2cdrivers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * finds the channels that changed between consecutive raw SRSHub frames, before they are decoded
+ * <p>
+ * every channel and I2C device field is precomputed as a set of (word, mask) pairs over the frame packed into
+ * little-endian 64-bit words, so each frame costs one XOR per word and one AND per pair
+ */
+final class SRSHubChangeTracker {
+    private final int wordCount;
+
+    // the pairs of unit u are pairWords and pairMasks from pairStarts[u] up to pairStarts[u + 1]
+    private final int[] pairStarts;
+    private final int[] pairWords;
+    private final long[] pairMasks;
+
+    // the unit of each pin, encoder and I2C device disconnect flag, or -1 when unconfigured
+    private final int[] pinUnits = new int[12];
+    private final int[] encoderUnits = new int[6];
+    private final int[] deviceUnits;
+
+    // the unit holding each quadrature encoder's delta, or -1
+    private final int[] deltaUnits = new int[6];
+
+    // the unit of each device's first field; its fields follow in layout order
+    private final int[] fieldUnits;
+    private final int[] fieldCounts;
+
+    private final long allChannels;
+
+    private long[] words;
+    private long[] previousWords;
+    private boolean primed = false;
+
+    private long channels = 0;
+    private final long[][] fields;
+
+    SRSHubChangeTracker(SRSHub.Config config, SRSHub.FrameLayout frameLayout, int updateLength) {
+        wordCount = (updateLength + 7) / 8;
+
+        words = new long[wordCount];
+        previousWords = new long[wordCount];
+
+        int deviceCount = 0;
+
+        for (ArrayList<SRSHub.I2CDevice> bus : config.i2cBuses) {
+            deviceCount += bus.size();
+        }
+
+        deviceUnits = new int[deviceCount];
+        fieldUnits = new int[deviceCount];
+        fieldCounts = new int[deviceCount];
+        fields = new long[deviceCount][];
+
+        Arrays.fill(
+                pinUnits,
+                -1
+        );
+
+        Arrays.fill(
+                encoderUnits,
+                -1
+        );
+
+        Arrays.fill(
+                deltaUnits,
+                -1
+        );
+
+        ArrayList<int[]> units = new ArrayList<>();
+
+        boolean aligned = frameLayout == SRSHub.FrameLayout.ALIGNED;
+
+        // bit offsets into the frame, counted as readBits does
+        int index = aligned ? 8 * (SRSHub.ALIGNED_FLAGS_OFFSET + SRSHub.ALIGNED_FLAGS_LENGTH) : 8;
+
+        long all = 0;
+
+        for (int i = 0; i < config.analogDigitalDevices.length; i++) {
+            switch (config.analogDigitalDevices[i]) {
+                case ANALOG:
+                    // the aligned layout clamps all 16 bits rather than masking them to 12
+                    pinUnits[i] = addUnit(
+                            units,
+                            index,
+                            aligned ? 16 : 12
+                    );
+
+                    index += aligned ? 16 : 12;
+
+                    break;
+                case DIGITAL:
+                    if (aligned) {
+                        pinUnits[i] = addUnit(
+                                units,
+                                8 * SRSHub.ALIGNED_FLAGS_OFFSET + i,
+                                1
+                        );
+                    }
+                    else {
+                        pinUnits[i] = addUnit(
+                                units,
+                                index++,
+                                1
+                        );
+                    }
+
+                    break;
+                case NONE:
+                    continue;
+            }
+
+            all |= 1L << (SRSHub.CHANGED_ANALOG_DIGITAL_SHIFT + i);
+        }
+
+        for (int i = 0; i < config.encoders.length; i++) {
+            if (config.encoders[i] == SRSHub.Encoder.NONE) {
+                continue;
+            }
+
+            if (config.encoders[i] == SRSHub.Encoder.QUADRATURE) {
+                // the delta moves the position whenever it is nonzero, and means nothing by changing back to zero,
+                // so only the velocity is compared with the previous frame
+                encoderUnits[i] = addUnit(
+                        units,
+                        index + 16,
+                        32
+                );
+
+                deltaUnits[i] = addUnit(
+                        units,
+                        index,
+                        16
+                );
+            }
+            else {
+                encoderUnits[i] = addUnit(
+                        units,
+                        index,
+                        48
+                );
+            }
+
+            index += 48;
+
+            all |= 1L << (SRSHub.CHANGED_ENCODER_SHIFT + i);
+        }
+
+        int device = 0;
+
+        for (ArrayList<SRSHub.I2CDevice> bus : config.i2cBuses) {
+            for (SRSHub.I2CDevice i2cDevice : bus) {
+                SRSHub.Layout layout = i2cDevice.getLayout();
+
+                // the device's own unit is its disconnect flag; it also counts as changed when any of its fields do
+                if (aligned) {
+                    deviceUnits[device] = addUnit(
+                            units,
+                            8 * SRSHub.ALIGNED_FLAGS_OFFSET + SRSHub.ALIGNED_DEVICE_FLAGS_SHIFT + device,
+                            1
+                    );
+                }
+                else {
+                    deviceUnits[device] = addUnit(
+                            units,
+                            index,
+                            1
+                    );
+
+                    index++;
+                }
+
+                fieldUnits[device] = units.size();
+                fieldCounts[device] = layout.size();
+                fields[device] = new long[(layout.size() + 63) / 64];
+
+                for (int k = 0; k < layout.size(); k++) {
+                    addUnit(
+                            units,
+                            aligned ? index + 8 * layout.alignedOffsets[k] : index + layout.packedOffsets[k],
+                            layout.bits[k]
+                    );
+                }
+
+                index += aligned ? 8 * layout.alignedLength : layout.packedLength;
+
+                if (device < 64 - SRSHub.CHANGED_I2C_DEVICE_SHIFT) {
+                    all |= 1L << (SRSHub.CHANGED_I2C_DEVICE_SHIFT + device);
+                }
+
+                device++;
+            }
+        }
+
+        allChannels = all;
+
+        int pairCount = 0;
+
+        for (int[] unit : units) {
+            pairCount += unit.length / 2;
+        }
+
+        pairStarts = new int[units.size() + 1];
+        pairWords = new int[pairCount];
+        pairMasks = new long[pairCount];
+
+        int pair = 0;
+
+        for (int u = 0; u < units.size(); u++) {
+            int[] unit = units.get(u);
+
+            pairStarts[u] = pair;
+
+            for (int p = 0; p < unit.length; p += 2) {
+                int start = unit[p];
+                int bits = unit[p + 1];
+
+                pairWords[pair] = start >> 6;
+                pairMasks[pair] = (bits == 64 ? -1L : (1L << bits) - 1) << (start & 63);
+
+                pair++;
+            }
+        }
+
+        pairStarts[units.size()] = pair;
+    }
+
+    // adds a unit spanning bits from start, split at word boundaries; returns its index
+    private static int addUnit(ArrayList<int[]> units, int start, int bits) {
+        int[] unit = new int[0];
+
+        while (bits > 0) {
+            int inWord = Math.min(
+                    bits,
+                    64 - (start & 63)
+            );
+
+            unit = Arrays.copyOf(
+                    unit,
+                    unit.length + 2
+            );
+
+            unit[unit.length - 2] = start;
+            unit[unit.length - 1] = inWord;
+
+            start += inWord;
+            bits -= inWord;
+        }
+
+        units.add(unit);
+
+        return units.size() - 1;
+    }
+
+    /**
+     * compares a frame that passed its CRC against the previous one; the first frame after construction or
+     * {@link #reset()} marks everything configured as changed
+     */
+    void update(byte[] frame) {
+        long[] current = previousWords;
+
+        previousWords = words;
+        words = current;
+
+        Arrays.fill(
+                current,
+                0
+        );
+
+        for (int i = 0; i < frame.length; i++) {
+            current[i >> 3] |= (frame[i] & 0xFFL) << ((i & 7) << 3);
+        }
+
+        if (!primed) {
+            primed = true;
+
+            channels = allChannels;
+
+            for (int device = 0; device < fields.length; device++) {
+                long[] deviceFields = fields[device];
+
+                Arrays.fill(
+                        deviceFields,
+                        -1L
+                );
+
+                int extra = deviceFields.length * 64 - fieldCounts[device];
+
+                if (extra > 0) {
+                    deviceFields[deviceFields.length - 1] >>>= extra;
+                }
+            }
+
+            return;
+        }
+
+        long[] previous = previousWords;
+
+        // the previous words are no longer needed, so they take the differences
+        boolean any = false;
+
+        for (int w = 0; w < wordCount; w++) {
+            previous[w] ^= current[w];
+
+            any |= previous[w] != 0;
+        }
+
+        long changed = 0;
+
+        if (any) {
+            for (int i = 0; i < pinUnits.length; i++) {
+                if (pinUnits[i] >= 0 && changed(pinUnits[i], previous)) {
+                    changed |= 1L << (SRSHub.CHANGED_ANALOG_DIGITAL_SHIFT + i);
+                }
+            }
+        }
+
+        for (int i = 0; i < encoderUnits.length; i++) {
+            if (encoderUnits[i] >= 0 && (any && changed(encoderUnits[i], previous) ||
+                    deltaUnits[i] >= 0 && changed(deltaUnits[i], current))) {
+                changed |= 1L << (SRSHub.CHANGED_ENCODER_SHIFT + i);
+            }
+        }
+
+        for (int device = 0; device < fields.length; device++) {
+            long[] deviceFields = fields[device];
+
+            Arrays.fill(
+                    deviceFields,
+                    0
+            );
+
+            if (!any) {
+                continue;
+            }
+
+            boolean deviceChanged = changed(deviceUnits[device], previous);
+
+            for (int k = 0; k < fieldCounts[device]; k++) {
+                if (changed(fieldUnits[device] + k, previous)) {
+                    deviceFields[k >> 6] |= 1L << k;
+
+                    deviceChanged = true;
+                }
+            }
+
+            if (deviceChanged && device < 64 - SRSHub.CHANGED_I2C_DEVICE_SHIFT) {
+                changed |= 1L << (SRSHub.CHANGED_I2C_DEVICE_SHIFT + device);
+            }
+        }
+
+        channels = changed;
+    }
+
+    private boolean changed(int unit, long[] words) {
+        for (int p = pairStarts[unit]; p < pairStarts[unit + 1]; p++) {
+            if ((words[pairWords[p]] & pairMasks[p]) != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * records an update that brought no new frame
+     */
+    void unchanged() {
+        channels = 0;
+
+        for (long[] deviceFields : fields) {
+            Arrays.fill(
+                    deviceFields,
+                    0
+            );
+        }
+    }
+
+    /**
+     * makes the next frame count as entirely changed, as after a reconnect
+     */
+    void reset() {
+        primed = false;
+
+        unchanged();
+    }
+
+    long channels() {
+        return channels;
+    }
+
+    int deviceCount() {
+        return fields.length;
+    }
+
+    int fieldCount(int device) {
+        return fieldCounts[device];
+    }
+
+    /**
+     * @return the first changed field of the device at or after fromField, or -1 if there is none
+     */
+    int nextChangedField(int device, int fromField) {
+        long[] deviceFields = fields[device];
+
+        if (fromField < 0) {
+            fromField = 0;
+        }
+
+        for (int w = fromField >> 6; w < deviceFields.length; w++) {
+            long word = deviceFields[w];
+
+            if (w == fromField >> 6) {
+                word &= -1L << (fromField & 63);
+            }
+
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,186 @@
+package org.openftc.i2cdrivers;
+
+/**
+ * maps the SRSHub's microsecond sample counter onto System.nanoTime, tracking the drift between the two clocks
+ * <p>
+ * each frame gives the offset between the host time its read finished and the hub time it was sampled. the sample
+ * always precedes the end of the read and delays only ever add to that offset, so the least-delayed frame of each
+ * window is kept, and a line fitted through the recent window minima gives the drift; the line is then lowered onto
+ * the lowest of them, and moved back by the shortest read seen, since even the least-delayed sample was taken no later
+ * than its read started
+ */
+final class SRSHubClockSync {
+    private static final long WINDOW_NANOS = 250_000_000;
+    private static final int WINDOWS = 16;
+
+    // an offset this far from the fitted line means the hub's counter restarted rather than drifted
+    private static final long DISCONTINUITY_NANOS = 1_000_000_000;
+
+    private boolean started = false;
+    private int lastRaw;
+    private long hubMicros;
+
+    // the least-delayed frame of each closed window, as hub time and offset, relative to the first frame's hub time
+    private final double[] windowHubMicros = new double[WINDOWS];
+    private final double[] windowOffsets = new double[WINDOWS];
+    private int windows = 0;
+    private int nextWindow = 0;
+
+    private long windowStartNanos;
+    private double windowMinHubMicros;
+    private double windowMinOffset;
+
+    // hub times and offsets are kept relative to the first frame's, so that doubles hold them exactly
+    private long referenceHubMicros;
+    private long referenceOffsetNanos;
+
+    // offset = reference + intercept + slope * (hub - reference), in nanoseconds against microseconds
+    private double intercept;
+    private double slope = 0;
+
+    private long minReadNanos = Long.MAX_VALUE;
+
+    /**
+     * forgets the counter and the fitted clocks, as after the hub restarts
+     */
+    void reset() {
+        started = false;
+        windows = 0;
+        nextWindow = 0;
+        slope = 0;
+        minReadNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param raw the counter the hub sent, which wraps every 2^32 microseconds
+     * @param readNanos the System.nanoTime at which the read of the frame started
+     * @param readEndNanos the System.nanoTime at which the read of the frame finished
+     *
+     * @return the hub time of the frame in microseconds, unwrapped past the counter's overflows
+     */
+    long observe(int raw, long readNanos, long readEndNanos) {
+        minReadNanos = Math.min(
+                minReadNanos,
+                readEndNanos - readNanos
+        );
+
+        if (!started) {
+            started = true;
+
+            lastRaw = raw;
+            hubMicros = raw & 0xFFFFFFFFL;
+            referenceHubMicros = hubMicros;
+            referenceOffsetNanos = readEndNanos - hubMicros * 1000;
+
+            intercept = 0;
+
+            startWindow(readEndNanos);
+
+            return hubMicros;
+        }
+
+        hubMicros += (raw - lastRaw) & 0xFFFFFFFFL;
+        lastRaw = raw;
+
+        double relative = hubMicros - referenceHubMicros;
+        double offset = readEndNanos - hubMicros * 1000 - referenceOffsetNanos;
+
+        if (Math.abs(offset - (intercept + slope * relative)) > DISCONTINUITY_NANOS) {
+            reset();
+
+            return observe(
+                    raw,
+                    readNanos,
+                    readEndNanos
+            );
+        }
+
+        if (offset < windowMinOffset) {
+            windowMinOffset = offset;
+            windowMinHubMicros = relative;
+        }
+
+        // a frame that finished sooner than the line allows lowers it at once
+        double adjusted = offset - slope * relative;
+
+        if (adjusted < intercept) {
+            intercept = adjusted;
+        }
+
+        if (readEndNanos - windowStartNanos >= WINDOW_NANOS) {
+            windowHubMicros[nextWindow] = windowMinHubMicros;
+            windowOffsets[nextWindow] = windowMinOffset;
+
+            nextWindow = (nextWindow + 1) % WINDOWS;
+            windows = Math.min(
+                    windows + 1,
+                    WINDOWS
+            );
+
+            fit();
+
+            startWindow(readEndNanos);
+        }
+
+        return hubMicros;
+    }
+
+    private void startWindow(long readEndNanos) {
+        windowStartNanos = readEndNanos;
+        windowMinOffset = Double.POSITIVE_INFINITY;
+    }
+
+    private void fit() {
+        if (windows >= 2) {
+            double meanHub = 0;
+            double meanOffset = 0;
+
+            for (int i = 0; i < windows; i++) {
+                meanHub += windowHubMicros[i];
+                meanOffset += windowOffsets[i];
+            }
+
+            meanHub /= windows;
+            meanOffset /= windows;
+
+            double covariance = 0;
+            double variance = 0;
+
+            for (int i = 0; i < windows; i++) {
+                covariance += (windowHubMicros[i] - meanHub) * (windowOffsets[i] - meanOffset);
+                variance += (windowHubMicros[i] - meanHub) * (windowHubMicros[i] - meanHub);
+            }
+
+            if (variance > 0) {
+                slope = covariance / variance;
+            }
+        }
+
+        intercept = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < windows; i++) {
+            intercept = Math.min(
+                    intercept,
+                    windowOffsets[i] - slope * windowHubMicros[i]
+            );
+        }
+    }
+
+    /**
+     * @param hubMicros an unwrapped hub time returned by observe
+     *
+     * @return the System.nanoTime at which the hub's clock read that time
+     */
+    long toHostNanos(long hubMicros) {
+        double relative = hubMicros - referenceHubMicros;
+
+        return hubMicros * 1000 + referenceOffsetNanos + Math.round(intercept + slope * relative) - minReadNanos;
+    }
+
+    /**
+     * @return how much faster the host clock runs than the hub's, in parts per million
+     */
+    double driftPpm() {
+        return slope * 1000;
+    }
+}
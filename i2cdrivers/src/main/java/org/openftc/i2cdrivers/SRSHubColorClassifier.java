@@ -0,0 +1,478 @@
+package org.openftc.i2cdrivers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * a color classifier for the {@link SRSHub.APDS9151}, compiled into a quantized lookup table so that every sample is
+ * classified inside decode with integer math and two array reads
+ * <p>
+ * each sample is reduced to the shares of its red, green and infrared counts in the total of all four channels, which
+ * do not change with the distance to or brightness of the object; each share is quantized into bins, and the three bin
+ * indices select a cell holding a class and a confidence. samples darker than a minimum total are left unclassified
+ * <p>
+ * tables are trained with a {@link Builder} from labelled samples, for example recorded with the telemetry streamer,
+ * and can be saved with {@link #toBytes()} so that only {@link #fromBytes(byte[])} runs on the robot
+ */
+public class SRSHubColorClassifier {
+    /**
+     * the class of a sample that is too dark or matches no class closely enough
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int FORMAT_MAGIC = 0x5343;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_BINS = 64;
+    private static final int MAX_CLASSES = 127;
+
+    private final int bins;
+    private final int minimumTotal;
+    private final String[] classNames;
+
+    // the class of each cell plus one, so that 0 is UNKNOWN, and its confidence from 0 to 255
+    private final byte[] classes;
+    private final byte[] confidences;
+
+    private SRSHubColorClassifier(
+            int bins,
+            int minimumTotal,
+            String[] classNames,
+            byte[] classes,
+            byte[] confidences
+    ) {
+        this.bins = bins;
+        this.minimumTotal = minimumTotal;
+        this.classNames = classNames;
+        this.classes = classes;
+        this.confidences = confidences;
+    }
+
+    private static void checkBins(int bins) {
+        if (bins < 2 || bins > MAX_BINS) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Color classifier bins must be from 2 to " + MAX_BINS
+            );
+        }
+    }
+
+    // the cell of a sample, or -1 if it is too dark to classify
+    private int cell(int infrared, int red, int green, int blue) {
+        int total = infrared + red + green + blue;
+
+        if (total < minimumTotal || total <= 0) {
+            return -1;
+        }
+
+        // 20-bit counts times at most 64 bins stay within an int
+        int redBin = Math.min(red * bins / total, bins - 1);
+        int greenBin = Math.min(green * bins / total, bins - 1);
+        int infraredBin = Math.min(infrared * bins / total, bins - 1);
+
+        return (redBin * bins + greenBin) * bins + infraredBin;
+    }
+
+    /**
+     * classifies a sample
+     *
+     * @param infrared the raw infrared count
+     * @param red the raw red count
+     * @param green the raw green count
+     * @param blue the raw blue count
+     *
+     * @return the class index, or {@link #UNKNOWN}
+     */
+    public int classify(int infrared, int red, int green, int blue) {
+        int cell = cell(infrared, red, green, blue);
+
+        return cell < 0 ? UNKNOWN : classes[cell] - 1;
+    }
+
+    /**
+     * gets the confidence of the class {@link #classify} would return for a sample
+     *
+     * @param infrared the raw infrared count
+     * @param red the raw red count
+     * @param green the raw green count
+     * @param blue the raw blue count
+     *
+     * @return the confidence, from 0 to 1; 0 for {@link #UNKNOWN}
+     */
+    public double confidence(int infrared, int red, int green, int blue) {
+        int cell = cell(infrared, red, green, blue);
+
+        return cell < 0 ? 0 : (confidences[cell] & 0xFF) / 255.0;
+    }
+
+    void classify(SRSHub.APDS9151 device) {
+        int cell = cell(
+                device.infrared,
+                device.red,
+                device.green,
+                device.blue
+        );
+
+        if (cell < 0) {
+            device.colorClass = UNKNOWN;
+            device.colorConfidence = 0;
+        }
+        else {
+            device.colorClass = classes[cell] - 1;
+            device.colorConfidence = (confidences[cell] & 0xFF) / 255.0;
+        }
+    }
+
+    /**
+     * @return the number of classes
+     */
+    public int classCount() {
+        return classNames.length;
+    }
+
+    /**
+     * @param colorClass a class index
+     *
+     * @return the name the class was trained with, or "unknown" for {@link #UNKNOWN}
+     *
+     * @throws IndexOutOfBoundsException if the class does not exist
+     */
+    public String className(int colorClass) {
+        if (colorClass == UNKNOWN) {
+            return "unknown";
+        }
+
+        if (colorClass < 0 || colorClass >= classNames.length) {
+            SRSHub.throwException(
+                    IndexOutOfBoundsException.class,
+                    "Color class " + colorClass + " does not exist"
+            );
+        }
+
+        return classNames[colorClass];
+    }
+
+    /**
+     * @return the number of bins each share is quantized into
+     */
+    public int bins() {
+        return bins;
+    }
+
+    /**
+     * serializes the compiled table, to be stored and loaded on the robot with {@link #fromBytes(byte[])}
+     *
+     * @return the table
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        try {
+            output.writeShort(FORMAT_MAGIC);
+            output.writeByte(FORMAT_VERSION);
+            output.writeByte(bins);
+            output.writeInt(minimumTotal);
+            output.writeByte(classNames.length);
+
+            for (String name : classNames) {
+                output.writeUTF(name);
+            }
+
+            output.write(classes);
+            output.write(confidences);
+        }
+        catch (IOException e) {
+            // a ByteArrayOutputStream cannot fail
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * loads a table serialized by {@link #toBytes()}
+     *
+     * @param data the table
+     *
+     * @return the classifier
+     *
+     * @throws IllegalArgumentException if the data is not a valid table
+     */
+    public static SRSHubColorClassifier fromBytes(byte[] data) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+
+        try {
+            if (input.readUnsignedShort() != FORMAT_MAGIC || input.readUnsignedByte() != FORMAT_VERSION) {
+                SRSHub.throwException(
+                        IllegalArgumentException.class,
+                        "Data is not a color classifier table"
+                );
+            }
+
+            int bins = input.readUnsignedByte();
+
+            checkBins(bins);
+
+            int minimumTotal = input.readInt();
+
+            String[] classNames = new String[input.readUnsignedByte()];
+
+            for (int i = 0; i < classNames.length; i++) {
+                classNames[i] = input.readUTF();
+            }
+
+            byte[] classes = new byte[bins * bins * bins];
+            byte[] confidences = new byte[classes.length];
+
+            input.readFully(classes);
+            input.readFully(confidences);
+
+            for (byte colorClass : classes) {
+                if (colorClass < 0 || colorClass > classNames.length) {
+                    SRSHub.throwException(
+                            IllegalArgumentException.class,
+                            "Color classifier table refers to a class that does not exist"
+                    );
+                }
+            }
+
+            return new SRSHubColorClassifier(
+                    bins,
+                    minimumTotal,
+                    classNames,
+                    classes,
+                    confidences
+            );
+        }
+        catch (IOException e) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Color classifier table is truncated"
+            );
+
+            return null;
+        }
+    }
+
+    /**
+     * trains a classifier from labelled samples
+     * <p>
+     * each class is modelled as a normal distribution of red, green and infrared shares; every cell of the table takes
+     * the class most likely to have produced its center, with the probability of that class among all classes as its
+     * confidence. cells further than the rejection distance from every class are left {@link #UNKNOWN}
+     */
+    public static class Builder {
+        private static final double DEFAULT_REJECTION_SIGMAS = 4;
+
+        private final int bins;
+
+        private int minimumTotal = 1;
+        private double rejectionSigmas = DEFAULT_REJECTION_SIGMAS;
+
+        private final ArrayList<String> classNames = new ArrayList<>();
+
+        // per class: the sample count and the running sums and sums of squares of the three shares
+        private final ArrayList<double[]> statistics = new ArrayList<>();
+
+        /**
+         * @param bins the number of bins each share is quantized into, from 2 to 64; the table holds bins^3 cells of
+         *     2 bytes, so 16 bins make an 8 KiB table
+         *
+         * @throws IllegalArgumentException if bins is out of range
+         */
+        public Builder(int bins) {
+            checkBins(bins);
+
+            this.bins = bins;
+        }
+
+        /**
+         * adds a class to be trained
+         *
+         * @param name the name of the class, such as the game element it identifies
+         *
+         * @return the index the classifier reports for the class
+         *
+         * @throws IllegalStateException if there are already 127 classes
+         */
+        public int addClass(String name) {
+            if (classNames.size() == MAX_CLASSES) {
+                SRSHub.throwException(
+                        IllegalStateException.class,
+                        "A color classifier can have at most " + MAX_CLASSES + " classes"
+                );
+            }
+
+            classNames.add(name);
+            statistics.add(new double[7]);
+
+            return classNames.size() - 1;
+        }
+
+        /**
+         * adds a labelled sample, as read from the APDS9151
+         *
+         * @param colorClass the index returned by {@link #addClass(String)}
+         * @param infrared the raw infrared count
+         * @param red the raw red count
+         * @param green the raw green count
+         * @param blue the raw blue count
+         *
+         * @throws IndexOutOfBoundsException if the class does not exist
+         */
+        public void addSample(int colorClass, int infrared, int red, int green, int blue) {
+            if (colorClass < 0 || colorClass >= classNames.size()) {
+                SRSHub.throwException(
+                        IndexOutOfBoundsException.class,
+                        "Color class " + colorClass + " does not exist"
+                );
+            }
+
+            double total = (double) infrared + red + green + blue;
+
+            if (total <= 0) {
+                return;
+            }
+
+            double[] sums = statistics.get(colorClass);
+
+            double[] shares = {
+                    red / total,
+                    green / total,
+                    infrared / total
+            };
+
+            sums[0]++;
+
+            for (int i = 0; i < 3; i++) {
+                sums[1 + i] += shares[i];
+                sums[4 + i] += shares[i] * shares[i];
+            }
+        }
+
+        /**
+         * @param minimumTotal the smallest sum of the four raw counts that is classified; darker samples, such as with
+         *     nothing in front of the sensor, are {@link #UNKNOWN}
+         */
+        public void setMinimumTotal(int minimumTotal) {
+            this.minimumTotal = minimumTotal;
+        }
+
+        /**
+         * @param sigmas how many standard deviations from its nearest class a cell may be and still be classified
+         */
+        public void setRejectionSigmas(double sigmas) {
+            rejectionSigmas = sigmas;
+        }
+
+        /**
+         * compiles the lookup table
+         *
+         * @return the classifier
+         *
+         * @throws IllegalStateException if there are no classes, or a class has no samples
+         */
+        public SRSHubColorClassifier build() {
+            int classCount = classNames.size();
+
+            if (classCount == 0) {
+                SRSHub.throwException(
+                        IllegalStateException.class,
+                        "A color classifier needs at least one class"
+                );
+            }
+
+            double[][] means = new double[classCount][3];
+            double[][] variances = new double[classCount][3];
+
+            // a class whose samples all fall in one bin must still cover that bin
+            double minimumVariance = Math.pow(0.5 / bins, 2);
+
+            for (int c = 0; c < classCount; c++) {
+                double[] sums = statistics.get(c);
+
+                if (sums[0] == 0) {
+                    SRSHub.throwException(
+                            IllegalStateException.class,
+                            "Color class " + classNames.get(c) + " has no samples"
+                    );
+                }
+
+                for (int i = 0; i < 3; i++) {
+                    means[c][i] = sums[1 + i] / sums[0];
+                    variances[c][i] = Math.max(
+                            sums[4 + i] / sums[0] - means[c][i] * means[c][i],
+                            minimumVariance
+                    );
+                }
+            }
+
+            byte[] classes = new byte[bins * bins * bins];
+            byte[] confidences = new byte[classes.length];
+
+            double[] center = new double[3];
+            double[] logLikelihoods = new double[classCount];
+
+            double rejection = rejectionSigmas * rejectionSigmas;
+
+            for (int cell = 0; cell < classes.length; cell++) {
+                center[0] = (cell / (bins * bins) + 0.5) / bins;
+                center[1] = (cell / bins % bins + 0.5) / bins;
+                center[2] = (cell % bins + 0.5) / bins;
+
+                int best = -1;
+                double nearestDistance = Double.POSITIVE_INFINITY;
+
+                for (int c = 0; c < classCount; c++) {
+                    double distance = 0;
+                    double logNormalization = 0;
+
+                    for (int i = 0; i < 3; i++) {
+                        double offset = center[i] - means[c][i];
+
+                        distance += offset * offset / variances[c][i];
+                        logNormalization += Math.log(variances[c][i]) / 2;
+                    }
+
+                    nearestDistance = Math.min(
+                            nearestDistance,
+                            distance
+                    );
+
+                    logLikelihoods[c] = -distance / 2 - logNormalization;
+
+                    if (best < 0 || logLikelihoods[c] > logLikelihoods[best]) {
+                        best = c;
+                    }
+                }
+
+                if (nearestDistance > rejection) {
+                    continue;
+                }
+
+                // the posterior of the best class, relative to it so that distant cells cannot underflow
+                double sum = 0;
+
+                for (double logLikelihood : logLikelihoods) {
+                    sum += Math.exp(logLikelihood - logLikelihoods[best]);
+                }
+
+                classes[cell] = (byte) (best + 1);
+                confidences[cell] = (byte) Math.round(255 / sum);
+            }
+
+            return new SRSHubColorClassifier(
+                    bins,
+                    minimumTotal,
+                    classNames.toArray(new String[0]),
+                    classes,
+                    confidences
+            );
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.openftc.i2cdrivers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a single-producer, multi-consumer ring buffer of decoded SRSHub frames, created by {@link SRSHub#newFrameRing(int)}
+ * <p>
+ * every update that decodes a new frame writes it into the next preallocated slot, overwriting the oldest. each
+ * reader creates its own {@link Consumer}, which keeps its own cursor and reads frames into an {@link SRSHub.Snapshot}.
+ * the producer never waits for consumers: one that falls more than the capacity behind loses the frames that were
+ * overwritten, and is told so through its overrun count and listener
+ */
+public class SRSHubFrameRing {
+    /**
+     * receives each frame drained by a consumer
+     */
+    public interface FrameHandler {
+        /**
+         * @param frame the frame; it is refilled with the next frame once this returns, so copy out anything that
+         *     must be kept
+         */
+        void onFrame(SRSHub.Snapshot frame);
+    }
+
+    /**
+     * notified on the consumer's own thread when frames it had not read were overwritten
+     */
+    public interface OverrunListener {
+        /**
+         * @param lostFrames the number of frames skipped
+         */
+        void onOverrun(long lostFrames);
+    }
+
+    private final SRSHub.FrameGeometry geometry;
+    private final int capacity;
+
+    private final AtomicLongArray slots;
+
+    // the sequence held by each slot, or -1 while it is being written
+    private final AtomicLongArray slotSequences;
+
+    // the number of frames published, which is also the sequence of the next one
+    private final AtomicLong published = new AtomicLong();
+
+    SRSHubFrameRing(SRSHub.FrameGeometry geometry, int capacity) {
+        if (capacity < 2) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Frame ring capacity must be at least 2"
+            );
+        }
+
+        this.geometry = geometry;
+        this.capacity = capacity;
+
+        slots = new AtomicLongArray(capacity * geometry.length);
+        slotSequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            slotSequences.set(
+                    i,
+                    -1
+            );
+        }
+    }
+
+    void publish(SRSHub.FrameGeometry geometry, long[] frame) {
+        if (geometry.config != this.geometry.config) {
+            return;
+        }
+
+        long sequence = published.get();
+
+        int slot = (int) (sequence % capacity);
+        int base = slot * frame.length;
+
+        slotSequences.set(
+                slot,
+                -1
+        );
+
+        for (int i = 0; i < frame.length; i++) {
+            slots.set(
+                    base + i,
+                    frame[i]
+            );
+        }
+
+        slotSequences.set(
+                slot,
+                sequence
+        );
+
+        published.set(sequence + 1);
+    }
+
+    /**
+     * @return the number of frames the ring holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of frames published to the ring since it was created
+     */
+    public long published() {
+        return published.get();
+    }
+
+    /**
+     * creates a consumer that reads the frames published from now on
+     *
+     * @return the consumer, owned by a single reader thread
+     */
+    public Consumer newConsumer() {
+        return new Consumer();
+    }
+
+    /**
+     * one reader's cursor into the ring; use each consumer from a single thread
+     */
+    public class Consumer {
+        private long cursor = published.get();
+
+        private long framesRead = 0;
+        private long overruns = 0;
+        private long lostFrames = 0;
+
+        private OverrunListener overrunListener;
+
+        private Consumer() {
+        }
+
+        /**
+         * @param listener called from poll or drain when frames were lost, or null to stop listening
+         */
+        public void setOverrunListener(OverrunListener listener) {
+            overrunListener = listener;
+        }
+
+        /**
+         * @return the number of frames published but not yet read by this consumer, including any already
+         *     overwritten
+         */
+        public long pending() {
+            return published.get() - cursor;
+        }
+
+        /**
+         * reads the oldest frame this consumer has not read
+         *
+         * @param frame the snapshot to fill; it is bound to this ring's Config on first use
+         *
+         * @return true if a frame was read, false if the consumer is caught up
+         */
+        public boolean poll(SRSHub.Snapshot frame) {
+            frame.bind(geometry);
+
+            long[] target = frame.slots();
+
+            while (true) {
+                long head = published.get();
+
+                if (cursor >= head) {
+                    return false;
+                }
+
+                // the slot after the oldest one may already be in the middle of being overwritten
+                if (head - cursor >= capacity) {
+                    skipTo(head - capacity + 1);
+
+                    continue;
+                }
+
+                int slot = (int) (cursor % capacity);
+                int base = slot * target.length;
+
+                if (slotSequences.get(slot) != cursor) {
+                    skipTo(published.get() - capacity + 1);
+
+                    continue;
+                }
+
+                for (int i = 0; i < target.length; i++) {
+                    target[i] = slots.get(base + i);
+                }
+
+                if (slotSequences.get(slot) != cursor) {
+                    skipTo(published.get() - capacity + 1);
+
+                    continue;
+                }
+
+                frame.load(cursor + 1);
+
+                cursor++;
+                framesRead++;
+
+                return true;
+            }
+        }
+
+        /**
+         * reads every frame this consumer has not read, oldest first
+         *
+         * @param frame the snapshot to fill with each frame in turn
+         * @param handler called once per frame
+         *
+         * @return the number of frames read
+         */
+        public int drain(SRSHub.Snapshot frame, FrameHandler handler) {
+            int count = 0;
+
+            while (poll(frame)) {
+                handler.onFrame(frame);
+
+                count++;
+            }
+
+            return count;
+        }
+
+        /**
+         * discards every pending frame, so the next poll returns the next frame published
+         */
+        public void skipToLatest() {
+            cursor = published.get();
+        }
+
+        private void skipTo(long sequence) {
+            long lost = sequence - cursor;
+
+            if (lost <= 0) {
+                return;
+            }
+
+            cursor = sequence;
+
+            overruns++;
+            lostFrames += lost;
+
+            OverrunListener listener = overrunListener;
+
+            if (listener != null) {
+                listener.onOverrun(lost);
+            }
+        }
+
+        /**
+         * @return the number of frames read by this consumer
+         */
+        public long framesRead() {
+            return framesRead;
+        }
+
+        /**
+         * @return the number of times this consumer fell behind far enough to lose frames
+         */
+        public long overruns() {
+            return overruns;
+        }
+
+        /**
+         * @return the number of frames this consumer lost to overruns
+         */
+        public long lostFrames() {
+            return lostFrames;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package org.openftc.i2cdrivers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * the layout of the memory-mapped file written by {@link SRSHubMailboxPublisher}, and a reader that takes coherent
+ * copies of it from another process
+ * <p>
+ * this class only depends on java.*, so it can be copied into another app on the robot controller; once the file is
+ * mapped, reading it makes no system calls
+ * <p>
+ * the file is {@link #LENGTH} bytes and every value is little-endian. it holds only the latest frame:
+ * <pre>
+ * 0   u32 magic, u32 format version
+ * 8   i64 sequence: odd while the publisher is writing, and twice the number of frames published otherwise
+ * 16  i64 checksum
+ * 24  i64 session: the System.nanoTime() at which the publisher was created, so a restarted publisher, whose
+ *     sequence starts over, is told apart from the one before
+ * 32  i64 layout id: nonzero once published, and changed whenever the publishing SRSHub's Config changes
+ * 40  i32 slot count, i32 device count
+ * 48  u8 mode per pin (0 none, 1 analog, 2 digital), u8 type per encoder port (0 none, 1 quadrature, 2 PWM), 6 unused
+ *     bytes
+ * 72  per device, in bus then configuration order: i32 bus, i32 type, i32 first slot, i32 value count
+ * ... i64 slots, starting at 72 + 16 * device count:
+ *     0 update failed, 1-12 pin values as float64 bits, 13-18 encoder positions, 19-24 encoder velocities,
+ *     25 System.nanoTime() at which the frame's read started, 26 System.nanoTime() at which it was sampled, then per
+ *     device its disconnected flag followed by its values
+ * </pre>
+ * device types are the TYPE_ constants of {@link SRSHubTelemetry}. System.nanoTime() reads the same monotonic clock in
+ * every process on the robot controller, so timestamps can be compared against the reader's own
+ * <p>
+ * a reader copies the file between two reads of the sequence and keeps the copy if both were equal and even, and
+ * either the sequence or the session differs from the copy it kept before. the checksum is taken with
+ * {@link #checksum(long, long[], int)} over the sequence and every 8-byte word from the session to the end of the
+ * slots; Java has no memory fences for mapped files, so it also rejects a copy torn by loads
+ * reordered around the sequence
+ */
+public final class SRSHubMailbox {
+    static final int MAGIC = 0x4D535253;
+    static final int VERSION = 2;
+
+    /**
+     * the length of the file, enough for any Config whose frame fits in a single read
+     */
+    public static final int LENGTH = 64 * 1024;
+
+    static final int SEQUENCE_OFFSET = 8;
+    static final int CHECKSUM_OFFSET = 16;
+    static final int SESSION_OFFSET = 24;
+    static final int LAYOUT_OFFSET = 32;
+    static final int SLOT_COUNT_OFFSET = 40;
+    static final int DEVICE_COUNT_OFFSET = 44;
+    static final int PIN_MODES_OFFSET = 48;
+    static final int ENCODER_TYPES_OFFSET = 60;
+    static final int DEVICES_OFFSET = 72;
+    static final int DEVICE_LENGTH = 16;
+
+    public static final int PIN_NONE = 0;
+    public static final int PIN_ANALOG = 1;
+    public static final int PIN_DIGITAL = 2;
+
+    public static final int ENCODER_NONE = 0;
+    public static final int ENCODER_QUADRATURE = 1;
+    public static final int ENCODER_PWM = 2;
+
+    // the slots of a frame, as in SRSHub's copyFrame
+    private static final int SLOT_DISCONNECTED = 0;
+    private static final int SLOT_ANALOG_DIGITAL = 1;
+    private static final int SLOT_ENCODER_POSITIONS = 13;
+    private static final int SLOT_ENCODER_VELOCITIES = 19;
+    private static final int SLOT_TIMESTAMP = 25;
+    private static final int SLOT_SAMPLE_TIMESTAMP = 26;
+
+    private SRSHubMailbox() {
+    }
+
+    /**
+     * @param sequence the even sequence of the frame
+     * @param words the words from the session to the end of the slots
+     * @param length the number of words
+     *
+     * @return the checksum stored with the frame
+     */
+    public static long checksum(long sequence, long[] words, int length) {
+        long hash = sequence;
+
+        for (int i = 0; i < length; i++) {
+            hash = Long.rotateLeft(
+                    hash ^ words[i],
+                    27
+            ) * 0x9E3779B97F4A7C15L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * maps a mailbox file and copies its latest frame on request; use each reader from a single thread
+     */
+    public static class Reader implements Closeable {
+        // reads that keep finding the publisher mid-write give up after this many attempts rather than spinning on a
+        // publisher that may have died while writing
+        private static final int READ_ATTEMPTS = 64;
+
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+
+        private final long[] words = new long[(LENGTH - SESSION_OFFSET) / 8];
+
+        private long sequence = 0;
+        private long session = 0;
+        private long layoutId = 0;
+
+        private final int[] pinModes = new int[12];
+        private final int[] encoderTypes = new int[6];
+
+        private int deviceCount = 0;
+        private int[] deviceBuses = new int[0];
+        private int[] deviceTypes = new int[0];
+        private int[] deviceSlots = new int[0];
+        private int[] deviceValueCounts = new int[0];
+
+        private long[] slots = new long[0];
+
+        private long frames = 0;
+        private long tornReads = 0;
+        private long layoutChanges = 0;
+        private long sessionChanges = 0;
+
+        /**
+         * @param path the mailbox file, which the publisher must already have created
+         *
+         * @throws IOException if the file cannot be opened or mapped
+         * @throws IllegalArgumentException if the file is not a mailbox of this format version
+         */
+        public Reader(File path) throws IOException {
+            file = new RandomAccessFile(
+                    path,
+                    "r"
+            );
+
+            try {
+                if (file.length() < LENGTH) {
+                    throw new IllegalArgumentException(path + " is not an SRSHub mailbox");
+                }
+
+                buffer = file
+                        .getChannel()
+                        .map(
+                                FileChannel.MapMode.READ_ONLY,
+                                0,
+                                LENGTH
+                        );
+
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IllegalArgumentException(path + " is not an SRSHub mailbox");
+                }
+
+                if (buffer.getInt(4) != VERSION) {
+                    throw new IllegalArgumentException(
+                            path + " is mailbox format " + buffer.getInt(4) + ", expected " + VERSION
+                    );
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                file.close();
+
+                throw e;
+            }
+        }
+
+        /**
+         * copies the latest frame if it is newer than the one last read
+         *
+         * @return true if a newer frame was read, false if there is none yet or the publisher stayed in the middle of
+         *     writing; the previous frame is kept then
+         */
+        public boolean read() {
+            for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+                long before = buffer.getLong(SEQUENCE_OFFSET);
+
+                // sequence 0 is a publisher that has not written a frame yet; a restarted publisher counts its sequence
+                // from 0 again, so an equal sequence is only the same frame within the same session
+                if (before == 0 || (before == sequence && buffer.getLong(SESSION_OFFSET) == session)) {
+                    return false;
+                }
+
+                if ((before & 1) != 0) {
+                    Thread.yield();
+
+                    continue;
+                }
+
+                int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+                int devices = buffer.getInt(DEVICE_COUNT_OFFSET);
+
+                long end = DEVICES_OFFSET + (long) DEVICE_LENGTH * devices + 8L * slotCount;
+
+                // counts from a torn read can point anywhere
+                if (slotCount < SLOT_SAMPLE_TIMESTAMP + 1 || devices < 0 || end > LENGTH) {
+                    continue;
+                }
+
+                int length = (int) (end - SESSION_OFFSET) / 8;
+
+                for (int i = 0; i < length; i++) {
+                    words[i] = buffer.getLong(SESSION_OFFSET + 8 * i);
+                }
+
+                long checksum = buffer.getLong(CHECKSUM_OFFSET);
+                long after = buffer.getLong(SEQUENCE_OFFSET);
+
+                if (before != after || checksum(before, words, length) != checksum) {
+                    continue;
+                }
+
+                if (words[0] != session) {
+                    session = words[0];
+                    sessionChanges++;
+                }
+
+                if (words[1] != layoutId) {
+                    bindLayout(
+                            words[1],
+                            slotCount,
+                            devices
+                    );
+                }
+
+                int first = (DEVICES_OFFSET + DEVICE_LENGTH * devices - SESSION_OFFSET) / 8;
+
+                System.arraycopy(
+                        words,
+                        first,
+                        slots,
+                        0,
+                        slotCount
+                );
+
+                sequence = before;
+                frames++;
+
+                return true;
+            }
+
+            tornReads++;
+
+            return false;
+        }
+
+        // decodes the layout from the copied words; it only allocates when the layout changes
+        private void bindLayout(long id, int slotCount, int devices) {
+            layoutId = id;
+            layoutChanges++;
+
+            for (int i = 0; i < 12; i++) {
+                pinModes[i] = byteAt(PIN_MODES_OFFSET + i);
+            }
+
+            for (int i = 0; i < 6; i++) {
+                encoderTypes[i] = byteAt(ENCODER_TYPES_OFFSET + i);
+            }
+
+            deviceCount = devices;
+            deviceBuses = new int[devices];
+            deviceTypes = new int[devices];
+            deviceSlots = new int[devices];
+            deviceValueCounts = new int[devices];
+
+            for (int i = 0; i < devices; i++) {
+                int offset = DEVICES_OFFSET + DEVICE_LENGTH * i;
+
+                deviceBuses[i] = intAt(offset);
+                deviceTypes[i] = intAt(offset + 4);
+                deviceSlots[i] = intAt(offset + 8);
+                deviceValueCounts[i] = intAt(offset + 12);
+            }
+
+            slots = new long[slotCount];
+        }
+
+        // reads from the copied words rather than the file, so the layout matches the checksum
+        private int byteAt(int offset) {
+            long word = words[(offset - SESSION_OFFSET) / 8];
+
+            return (int) (word >>> 8 * (offset % 8)) & 0xFF;
+        }
+
+        private int intAt(int offset) {
+            long word = words[(offset - SESSION_OFFSET) / 8];
+
+            return (int) (word >>> 8 * (offset % 8));
+        }
+
+        /**
+         * @return the number of frames the publisher of the frame last read had published up to and including it, or 0
+         *     before the first; it starts over when a new publisher takes over the file
+         */
+        public long version() {
+            return sequence / 2;
+        }
+
+        /**
+         * @return the session of the publisher that wrote the frame last read, or 0 before the first
+         */
+        public long session() {
+            return session;
+        }
+
+        /**
+         * @return the number of times this reader has seen a new publisher take over the file, including the first
+         */
+        public long sessionChanges() {
+            return sessionChanges;
+        }
+
+        /**
+         * @return the layout id of the frame last read; it changes when the publisher's Config does
+         */
+        public long layoutId() {
+            return layoutId;
+        }
+
+        /**
+         * @return the number of frames read by this reader
+         */
+        public long frames() {
+            return frames;
+        }
+
+        /**
+         * @return the number of reads that gave up because every attempt found the publisher mid-write or a torn copy
+         */
+        public long tornReads() {
+            return tornReads;
+        }
+
+        /**
+         * @return the number of times this reader has seen the layout change, including the first frame
+         */
+        public long layoutChanges() {
+            return layoutChanges;
+        }
+
+        /**
+         * @return whether the update that produced the frame failed
+         */
+        public boolean disconnected() {
+            return slots.length > 0 && slots[SLOT_DISCONNECTED] != 0;
+        }
+
+        /**
+         * @return the System.nanoTime() at which the read of the frame started
+         */
+        public long timestampNanos() {
+            return slots.length > 0 ? slots[SLOT_TIMESTAMP] : 0;
+        }
+
+        /**
+         * @return the System.nanoTime() at which the SRSHub sampled the frame
+         */
+        public long sampleTimeNanos() {
+            return slots.length > 0 ? slots[SLOT_SAMPLE_TIMESTAMP] : 0;
+        }
+
+        /**
+         * @param pin the pin, from 1 to 12
+         *
+         * @return one of the PIN_ constants
+         */
+        public int pinMode(int pin) {
+            return pinModes[pin - 1];
+        }
+
+        /**
+         * @param pin the pin being read, from 1 to 12
+         *
+         * @return the value of the pin in the frame; from 0 to 1 for analog pins and 0 or 1 for digital pins
+         */
+        public double readAnalogDigitalDevice(int pin) {
+            return slots.length > 0 ? Double.longBitsToDouble(slots[SLOT_ANALOG_DIGITAL + pin - 1]) : 0;
+        }
+
+        /**
+         * @param port the port, from 1 to 6
+         *
+         * @return one of the ENCODER_ constants
+         */
+        public int encoderType(int port) {
+            return encoderTypes[port - 1];
+        }
+
+        /**
+         * @param port the port being read, from 1 to 6
+         *
+         * @return the full position of the encoder in the frame
+         */
+        public long readEncoderPosition(int port) {
+            return slots.length > 0 ? slots[SLOT_ENCODER_POSITIONS + port - 1] : 0;
+        }
+
+        /**
+         * @param port the port being read, from 1 to 6
+         *
+         * @return the velocity of the encoder in the frame
+         */
+        public int readEncoderVelocity(int port) {
+            return slots.length > 0 ? (int) slots[SLOT_ENCODER_VELOCITIES + port - 1] : 0;
+        }
+
+        /**
+         * @return the number of I2C devices in the layout
+         */
+        public int deviceCount() {
+            return deviceCount;
+        }
+
+        /**
+         * @param bus the bus of the device, from 1 to 3
+         * @param type one of the TYPE_ constants of {@link SRSHubTelemetry}
+         *
+         * @return the index of the first device of the type on the bus, or -1 if the layout has none
+         */
+        public int findDevice(int bus, int type) {
+            for (int i = 0; i < deviceCount; i++) {
+                if (deviceBuses[i] == bus && deviceTypes[i] == type) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @param device the index of the device, in bus then configuration order
+         *
+         * @return the bus of the device, from 1 to 3
+         */
+        public int deviceBus(int device) {
+            return deviceBuses[device];
+        }
+
+        /**
+         * @param device the index of the device
+         *
+         * @return the type of the device, one of the TYPE_ constants of {@link SRSHubTelemetry}
+         */
+        public int deviceType(int device) {
+            return deviceTypes[device];
+        }
+
+        /**
+         * @param device the index of the device
+         *
+         * @return whether the device was disconnected in the frame
+         */
+        public boolean deviceDisconnected(int device) {
+            return slots[deviceSlots[device]] != 0;
+        }
+
+        /**
+         * @param device the index of the device
+         *
+         * @return the number of values the device reports, in the order of its layout
+         */
+        public int deviceValueCount(int device) {
+            return deviceValueCounts[device];
+        }
+
+        /**
+         * @param device the index of the device
+         * @param index the index of the value in the device's layout
+         *
+         * @return the value in the frame
+         */
+        public int deviceValue(int device, int index) {
+            return (int) slots[deviceSlots[device] + 1 + index];
+        }
+
+        /**
+         * @param device the index of the device
+         * @param index the index of a float32 field in the device's layout
+         *
+         * @return the value of the field in the frame
+         */
+        public float deviceFloatValue(int device, int index) {
+            return Float.intBitsToFloat(deviceValue(
+                    device,
+                    index
+            ));
+        }
+
+        /**
+         * closes the file; Java cannot unmap it, so the mapping itself is released once the reader is collected
+         */
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package org.openftc.i2cdrivers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * writes every update of an SRSHub into a memory-mapped file, in the layout described by {@link SRSHubMailbox}, so
+ * that other processes on the robot controller can read the latest frame with {@link SRSHubMailbox.Reader}
+ * <p>
+ * attach it with {@link SRSHub#setMailbox(SRSHubMailboxPublisher)}; each update then writes the frame into the file
+ * under a sequence lock, without allocating or making system calls. the layout follows the SRSHub's Config, and is
+ * rewritten with a new layout id after init or a profile switch
+ */
+public class SRSHubMailboxPublisher implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    // the words from the session to the end of the slots, as last written
+    private final long[] words = new long[(SRSHubMailbox.LENGTH - SRSHubMailbox.SESSION_OFFSET) / 8];
+
+    private final long session = System.nanoTime();
+
+    private SRSHub.FrameGeometry geometry;
+    private int layoutLength = 0;
+    private boolean layoutChanged = false;
+
+    private long sequence = 0;
+
+    private volatile boolean closed = false;
+    private volatile long published = 0;
+
+    /**
+     * creates or truncates the mailbox file under a new session; readers see no frame until the first update after it
+     * is attached
+     *
+     * @param path the file, such as one under /dev/shm or the app's cache directory
+     *
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public SRSHubMailboxPublisher(File path) throws IOException {
+        file = new RandomAccessFile(
+                path,
+                "rw"
+        );
+
+        try {
+            file.setLength(SRSHubMailbox.LENGTH);
+
+            buffer = file
+                    .getChannel()
+                    .map(
+                            FileChannel.MapMode.READ_WRITE,
+                            0,
+                            SRSHubMailbox.LENGTH
+                    );
+        }
+        catch (IOException e) {
+            file.close();
+
+            throw e;
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // a reader left over from an earlier publisher sees sequence 0 as no frame, and then the new session
+        buffer.putLong(
+                SRSHubMailbox.SEQUENCE_OFFSET,
+                0
+        );
+
+        words[0] = session;
+
+        buffer.putLong(
+                SRSHubMailbox.SESSION_OFFSET,
+                session
+        );
+
+        buffer.putInt(
+                0,
+                SRSHubMailbox.MAGIC
+        );
+
+        buffer.putInt(
+                4,
+                SRSHubMailbox.VERSION
+        );
+    }
+
+    // lays out the header for a new Config
+    private void bind(SRSHub.FrameGeometry geometry) {
+        SRSHub.Config config = geometry.config;
+
+        int devices = geometry.deviceOffsets.length;
+        int slotsOffset = SRSHubMailbox.DEVICES_OFFSET + SRSHubMailbox.DEVICE_LENGTH * devices;
+
+        if (slotsOffset + 8L * geometry.length > SRSHubMailbox.LENGTH) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "The Config has too many I2C devices for the mailbox"
+            );
+        }
+
+        ByteBuffer layout = ByteBuffer
+                .allocate(slotsOffset - SRSHubMailbox.LAYOUT_OFFSET)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        layout.putInt(
+                SRSHubMailbox.SLOT_COUNT_OFFSET - SRSHubMailbox.LAYOUT_OFFSET,
+                geometry.length
+        );
+
+        layout.putInt(
+                SRSHubMailbox.DEVICE_COUNT_OFFSET - SRSHubMailbox.LAYOUT_OFFSET,
+                devices
+        );
+
+        for (int i = 0; i < config.analogDigitalDevices.length; i++) {
+            int mode = SRSHubMailbox.PIN_NONE;
+
+            if (config.analogDigitalDevices[i] == SRSHub.AnalogDigitalDevice.ANALOG) {
+                mode = SRSHubMailbox.PIN_ANALOG;
+            }
+            else if (config.analogDigitalDevices[i] == SRSHub.AnalogDigitalDevice.DIGITAL) {
+                mode = SRSHubMailbox.PIN_DIGITAL;
+            }
+
+            layout.put(
+                    SRSHubMailbox.PIN_MODES_OFFSET - SRSHubMailbox.LAYOUT_OFFSET + i,
+                    (byte) mode
+            );
+        }
+
+        for (int i = 0; i < config.encoders.length; i++) {
+            int type = SRSHubMailbox.ENCODER_NONE;
+
+            if (config.encoders[i] == SRSHub.Encoder.QUADRATURE) {
+                type = SRSHubMailbox.ENCODER_QUADRATURE;
+            }
+            else if (config.encoders[i] == SRSHub.Encoder.PWM) {
+                type = SRSHubMailbox.ENCODER_PWM;
+            }
+
+            layout.put(
+                    SRSHubMailbox.ENCODER_TYPES_OFFSET - SRSHubMailbox.LAYOUT_OFFSET + i,
+                    (byte) type
+            );
+        }
+
+        int device = 0;
+
+        for (int bus = 0; bus < config.i2cBuses.length; bus++) {
+            for (SRSHub.I2CDevice i2cDevice : config.i2cBuses[bus]) {
+                int offset = SRSHubMailbox.DEVICES_OFFSET + SRSHubMailbox.DEVICE_LENGTH * device
+                        - SRSHubMailbox.LAYOUT_OFFSET;
+
+                layout.putInt(
+                        offset,
+                        bus + 1
+                );
+
+                layout.putInt(
+                        offset + 4,
+                        i2cDevice.getValue()
+                );
+
+                layout.putInt(
+                        offset + 8,
+                        geometry.deviceOffsets[device]
+                );
+
+                layout.putInt(
+                        offset + 12,
+                        i2cDevice
+                                .getLayout()
+                                .size()
+                );
+
+                device++;
+            }
+        }
+
+        layoutLength = layout.capacity() / 8;
+
+        long[] layoutWords = new long[layoutLength];
+
+        for (int i = 0; i < layoutLength; i++) {
+            layoutWords[i] = layout.getLong(8 * i);
+        }
+
+        // the id only depends on the layout, so republishing the same Config, even from a new session, keeps it
+        long id = SRSHubMailbox.checksum(
+                SRSHubMailbox.VERSION,
+                layoutWords,
+                layoutLength
+        );
+
+        layoutWords[0] = id != 0 ? id : 1;
+
+        System.arraycopy(
+                layoutWords,
+                0,
+                words,
+                1,
+                layoutLength
+        );
+
+        this.geometry = geometry;
+
+        layoutChanged = true;
+    }
+
+    /**
+     * writes a frame flattened by copyFrame under the sequence lock
+     */
+    void publish(SRSHub.FrameGeometry geometry, long[] frame) {
+        if (closed) {
+            return;
+        }
+
+        if (geometry != this.geometry) {
+            bind(geometry);
+        }
+
+        buffer.putLong(
+                SRSHubMailbox.SEQUENCE_OFFSET,
+                sequence + 1
+        );
+
+        if (layoutChanged) {
+            for (int i = 0; i < layoutLength; i++) {
+                buffer.putLong(
+                        SRSHubMailbox.LAYOUT_OFFSET + 8 * i,
+                        words[1 + i]
+                );
+            }
+
+            layoutChanged = false;
+        }
+
+        for (int i = 0; i < frame.length; i++) {
+            words[1 + layoutLength + i] = frame[i];
+
+            buffer.putLong(
+                    SRSHubMailbox.LAYOUT_OFFSET + 8 * (layoutLength + i),
+                    frame[i]
+            );
+        }
+
+        sequence += 2;
+
+        buffer.putLong(
+                SRSHubMailbox.CHECKSUM_OFFSET,
+                SRSHubMailbox.checksum(
+                        sequence,
+                        words,
+                        1 + layoutLength + frame.length
+                )
+        );
+
+        buffer.putLong(
+                SRSHubMailbox.SEQUENCE_OFFSET,
+                sequence
+        );
+
+        published++;
+    }
+
+    /**
+     * @return the session written to the mailbox, which readers report through {@link SRSHubMailbox.Reader#session()}
+     */
+    public long session() {
+        return session;
+    }
+
+    /**
+     * @return the number of frames written to the mailbox
+     */
+    public long published() {
+        return published;
+    }
+
+    /**
+     * stops publishing and closes the file; the last frame stays readable
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        file.close();
+    }
+}
@@ -0,0 +1,581 @@
+package org.openftc.i2cdrivers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * a fixed-size log-odds occupancy grid updated inside {@link SRSHub#update()} from a {@link SRSHub.VL53L5CX} and the
+ * robot's pose, attached with {@link SRSHub#setOccupancyGrid(SRSHubOccupancyGrid)}
+ * <p>
+ * every decoded frame casts one ray per zone from the sensor through the current pose: the cells the ray crosses become
+ * more likely free and the cell it ends in more likely occupied. only those cells are touched, and nothing is allocated
+ * per frame. cells outside the grid are ignored, so its size and resolution bound the memory it uses
+ * <p>
+ * the grid shares the pose's frame, x and y in millimeters as the VL53L5CX and GoBilda Pinpoint report them and
+ * heading counterclockwise in radians. zone k is in row k / width and column k % width of the sensor's image, row 0
+ * at the top and column 0 on the sensor's left
+ */
+public class SRSHubOccupancyGrid {
+    /**
+     * the robot's pose for each frame, read after the frame's I2C devices have been parsed
+     */
+    public interface PoseSource {
+        /**
+         * @param pose filled with x and y in millimeters and heading in radians
+         *
+         * @return whether the pose is valid for this frame; the frame is skipped if not
+         */
+        boolean readPose(double[] pose);
+    }
+
+    /**
+     * the horizontal and vertical field of view of the VL53L5CX
+     */
+    public static final double FIELD_OF_VIEW_RADIANS = Math.toRadians(45);
+
+    /**
+     * the largest distance the VL53L5CX's 11-bit zones report
+     */
+    public static final int MAX_ZONE_DISTANCE = 2047;
+
+    // log-odds are stored in thousandths, clamped so that a cell can change its mind in a few frames
+    private static final double LOG_ODDS_SCALE = 1000;
+
+    private final int cellsX;
+    private final int cellsY;
+    private final double cellSize;
+    private final double minX;
+    private final double minY;
+
+    private final short[] logOdds;
+
+    private SRSHub.VL53L5CX sensor;
+    private double sensorForward;
+    private double sensorLeft;
+    private double sensorHeading;
+
+    private PoseSource poseSource;
+
+    // the bearing of each zone from the sensor's axis, and the share of its distance along the floor
+    private double[] zoneCos = new double[0];
+    private double[] zoneSin = new double[0];
+    private double[] zoneHorizontal = new double[0];
+
+    private int firstRow = 0;
+    private int lastRow = Integer.MAX_VALUE;
+
+    private double maxRange = MAX_ZONE_DISTANCE;
+
+    private int hitLogOdds;
+    private int missLogOdds;
+    private int maxLogOdds;
+    private int occupiedLogOdds = 0;
+
+    private SRSHub.Config activeConfig;
+    private boolean active = false;
+
+    private final double[] pose = new double[3];
+    private final double[] lastPose = new double[3];
+    private boolean posed = false;
+
+    private long frames = 0;
+
+    /**
+     * @param cellsX the number of cells along x
+     * @param cellsY the number of cells along y
+     * @param cellSize the width of a cell in millimeters
+     * @param minX the x of the grid's lower edge
+     * @param minY the y of the grid's lower edge
+     *
+     * @throws IllegalArgumentException if the grid has no cells, more than 2^24, or a cell size that is not positive
+     */
+    public SRSHubOccupancyGrid(int cellsX, int cellsY, double cellSize, double minX, double minY) {
+        if (cellsX < 1 || cellsY < 1 || (long) cellsX * cellsY > 1 << 24) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Occupancy grids must have from 1 to 2^24 cells"
+            );
+        }
+
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Cell size must be positive and finite"
+            );
+        }
+
+        this.cellsX = cellsX;
+        this.cellsY = cellsY;
+        this.cellSize = cellSize;
+        this.minX = minX;
+        this.minY = minY;
+
+        logOdds = new short[cellsX * cellsY];
+
+        setSensorModel(
+                0.7,
+                0.4,
+                0.97
+        );
+    }
+
+    /**
+     * creates a pose source from a GoBilda Pinpoint on the SRSHub, which is skipped while disconnected
+     *
+     * @param pinpoint the Pinpoint instance added to the Config
+     *
+     * @return the pose source
+     */
+    public static PoseSource pinpointPose(final SRSHub.GoBildaPinpoint pinpoint) {
+        return new PoseSource() {
+            public boolean readPose(double[] pose) {
+                if (pinpoint.disconnected) {
+                    return false;
+                }
+
+                pose[0] = pinpoint.xPosition;
+                pose[1] = pinpoint.yPosition;
+                pose[2] = pinpoint.hOrientation;
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * creates a pose source from odometry on the SRSHub, whose distance per tick must be in millimeters
+     *
+     * @param odometry the odometry
+     *
+     * @return the pose source
+     */
+    public static PoseSource odometryPose(final SRSHubOdometry odometry) {
+        return new PoseSource() {
+            public boolean readPose(double[] pose) {
+                odometry.readPose(pose);
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * sets the sensor the grid is built from and where it is mounted
+     *
+     * @param sensor the VL53L5CX instance added to the Config
+     * @param forwardOffset how far forward of the robot's center the sensor is
+     * @param leftOffset how far left of the robot's center the sensor is
+     * @param headingOffset the direction the sensor faces relative to the robot's heading, counterclockwise in radians
+     */
+    public synchronized void setSensor(
+            SRSHub.VL53L5CX sensor,
+            double forwardOffset,
+            double leftOffset,
+            double headingOffset
+    ) {
+        this.sensor = sensor;
+
+        sensorForward = forwardOffset;
+        sensorLeft = leftOffset;
+        sensorHeading = headingOffset;
+
+        int zones = sensor.distances.length;
+        int width = zones == 64 ? 8 : 4;
+
+        double pitch = FIELD_OF_VIEW_RADIANS / width;
+
+        zoneCos = new double[zones];
+        zoneSin = new double[zones];
+        zoneHorizontal = new double[zones];
+
+        for (int k = 0; k < zones; k++) {
+            double bearing = (width / 2.0 - k % width - 0.5) * pitch;
+            double elevation = (width / 2.0 - k / width - 0.5) * pitch;
+
+            zoneCos[k] = Math.cos(bearing);
+            zoneSin[k] = Math.sin(bearing);
+            zoneHorizontal[k] = Math.cos(elevation);
+        }
+
+        activeConfig = null;
+    }
+
+    /**
+     * @param poseSource the robot's pose, such as {@link #pinpointPose(SRSHub.GoBildaPinpoint)}
+     */
+    public synchronized void setPoseSource(PoseSource poseSource) {
+        this.poseSource = poseSource;
+    }
+
+    /**
+     * limits the zones used to a band of rows, for example to leave out rows that see the floor
+     *
+     * @param firstRow the first row used, from 0 at the top
+     * @param lastRow the last row used, inclusive
+     *
+     * @throws IllegalArgumentException if the rows are out of order or negative
+     */
+    public synchronized void setRows(int firstRow, int lastRow) {
+        if (firstRow < 0 || lastRow < firstRow) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Rows must be nonnegative and in order"
+            );
+        }
+
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+    }
+
+    /**
+     * @param maxRange the distance, in millimeters, at or beyond which a zone reports no obstacle; its ray still clears
+     *     the cells up to it
+     *
+     * @throws IllegalArgumentException if the range is not positive
+     */
+    public synchronized void setMaxRange(double maxRange) {
+        if (!(maxRange > 0)) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Maximum range must be positive"
+            );
+        }
+
+        this.maxRange = maxRange;
+    }
+
+    /**
+     * sets how much each observation moves a cell
+     *
+     * @param hitProbability the probability a cell is occupied given that a ray ended in it, above 0.5
+     * @param missProbability the probability a cell is occupied given that a ray crossed it, below 0.5
+     * @param maxProbability the most certain a cell can become either way, which bounds how long it takes to change
+     *
+     * @throws IllegalArgumentException if the probabilities are not in those ranges, or maxProbability is not
+     *     between 0.5 and 0.999
+     */
+    public synchronized void setSensorModel(double hitProbability, double missProbability, double maxProbability) {
+        if (!(hitProbability > 0.5 && hitProbability < 1) ||
+                !(missProbability > 0 && missProbability < 0.5) ||
+                !(maxProbability > 0.5 && maxProbability <= 0.999)) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Sensor model probabilities are out of range"
+            );
+        }
+
+        hitLogOdds = toLogOdds(hitProbability);
+        missLogOdds = toLogOdds(missProbability);
+        maxLogOdds = toLogOdds(maxProbability);
+    }
+
+    /**
+     * @param probability the probability above which a cell counts as an obstacle; 0.5 by default
+     */
+    public synchronized void setOccupiedThreshold(double probability) {
+        occupiedLogOdds = toLogOdds(Math.min(
+                Math.max(
+                        probability,
+                        0.001
+                ),
+                0.999
+        ));
+    }
+
+    private static int toLogOdds(double probability) {
+        return (int) Math.round(LOG_ODDS_SCALE * Math.log(probability / (1 - probability)));
+    }
+
+    void validate() {
+        if (sensor == null || poseSource == null) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "An occupancy grid needs a sensor and a pose source"
+            );
+        }
+    }
+
+    synchronized void integrate(SRSHub.Config config) {
+        // only a Config that holds the sensor updates its distances
+        if (config != activeConfig) {
+            activeConfig = config;
+            active = false;
+
+            for (ArrayList<SRSHub.I2CDevice> bus : config.i2cBuses) {
+                for (SRSHub.I2CDevice device : bus) {
+                    active |= device == sensor;
+                }
+            }
+        }
+
+        if (!active || sensor.disconnected || !poseSource.readPose(pose)) {
+            return;
+        }
+
+        double cos = Math.cos(pose[2]);
+        double sin = Math.sin(pose[2]);
+
+        double sensorX = pose[0] + cos * sensorForward - sin * sensorLeft;
+        double sensorY = pose[1] + sin * sensorForward + cos * sensorLeft;
+
+        double axisCos = Math.cos(pose[2] + sensorHeading);
+        double axisSin = Math.sin(pose[2] + sensorHeading);
+
+        int width = zoneCos.length == 64 ? 8 : 4;
+
+        int first = firstRow * width;
+        int end = (int) Math.min(
+                (lastRow + 1L) * width,
+                zoneCos.length
+        );
+
+        for (int k = first; k < end; k++) {
+            int distance = sensor.distances[k] & 0xFFFF;
+
+            // no return
+            if (distance == 0) {
+                continue;
+            }
+
+            boolean hit = distance < maxRange;
+
+            double range = (hit ? distance : maxRange) * zoneHorizontal[k];
+
+            double rayCos = axisCos * zoneCos[k] - axisSin * zoneSin[k];
+            double raySin = axisSin * zoneCos[k] + axisCos * zoneSin[k];
+
+            trace(
+                    sensorX,
+                    sensorY,
+                    sensorX + range * rayCos,
+                    sensorY + range * raySin,
+                    hit
+            );
+        }
+
+        System.arraycopy(
+                pose,
+                0,
+                lastPose,
+                0,
+                3
+        );
+
+        posed = true;
+        frames++;
+    }
+
+    // walks the cells from one point to another, clearing each and marking the last as hit or clear
+    private void trace(double x0, double y0, double x1, double y1, boolean hit) {
+        double gx0 = (x0 - minX) / cellSize;
+        double gy0 = (y0 - minY) / cellSize;
+        double gx1 = (x1 - minX) / cellSize;
+        double gy1 = (y1 - minY) / cellSize;
+
+        int cx = (int) Math.floor(gx0);
+        int cy = (int) Math.floor(gy0);
+        int ex = (int) Math.floor(gx1);
+        int ey = (int) Math.floor(gy1);
+
+        double dx = gx1 - gx0;
+        double dy = gy1 - gy0;
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+
+        double tDeltaX = dx != 0 ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+
+        double tMaxX = dx > 0 ? (cx + 1 - gx0) / dx : dx < 0 ? (gx0 - cx) / -dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy > 0 ? (cy + 1 - gy0) / dy : dy < 0 ? (gy0 - cy) / -dy : Double.POSITIVE_INFINITY;
+
+        int steps = Math.abs(ex - cx) + Math.abs(ey - cy);
+
+        for (int i = 0; i < steps; i++) {
+            observe(
+                    cx,
+                    cy,
+                    missLogOdds
+            );
+
+            if (tMaxX < tMaxY) {
+                cx += stepX;
+                tMaxX += tDeltaX;
+            }
+            else {
+                cy += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+
+        observe(
+                cx,
+                cy,
+                hit ? hitLogOdds : missLogOdds
+        );
+    }
+
+    private void observe(int cx, int cy, int change) {
+        if (cx < 0 || cy < 0 || cx >= cellsX || cy >= cellsY) {
+            return;
+        }
+
+        int cell = cy * cellsX + cx;
+
+        logOdds[cell] = (short) Math.max(
+                -maxLogOdds,
+                Math.min(
+                        maxLogOdds,
+                        logOdds[cell] + change
+                )
+        );
+    }
+
+    /**
+     * finds the nearest obstacle along a ray by walking the cells it crosses
+     *
+     * @param x the x the ray starts from
+     * @param y the y the ray starts from
+     * @param heading the direction of the ray, counterclockwise in radians
+     * @param maxDistance how far to look
+     *
+     * @return the distance to the edge of the first occupied cell, or positive infinity if there is none within
+     *     maxDistance
+     */
+    public synchronized double nearestObstacle(double x, double y, double heading, double maxDistance) {
+        double gx = (x - minX) / cellSize;
+        double gy = (y - minY) / cellSize;
+
+        double dx = Math.cos(heading);
+        double dy = Math.sin(heading);
+
+        int cx = (int) Math.floor(gx);
+        int cy = (int) Math.floor(gy);
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+
+        // in cells travelled along the ray
+        double tDeltaX = dx != 0 ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+
+        double tMaxX = dx > 0 ? (cx + 1 - gx) / dx : dx < 0 ? (gx - cx) / -dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy > 0 ? (cy + 1 - gy) / dy : dy < 0 ? (gy - cy) / -dy : Double.POSITIVE_INFINITY;
+
+        double limit = maxDistance / cellSize;
+        double entered = 0;
+
+        while (entered <= limit) {
+            if (cx >= 0 && cy >= 0 && cx < cellsX && cy < cellsY && logOdds[cy * cellsX + cx] > occupiedLogOdds) {
+                return entered * cellSize;
+            }
+
+            if (tMaxX < tMaxY) {
+                entered = tMaxX;
+                cx += stepX;
+                tMaxX += tDeltaX;
+            }
+            else {
+                entered = tMaxY;
+                cy += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * finds the nearest obstacle from the robot's center, at the pose of the most recently integrated frame
+     *
+     * @param relativeHeading the direction to look relative to the robot's heading, counterclockwise in radians
+     * @param maxDistance how far to look
+     *
+     * @return the distance to the edge of the first occupied cell, or positive infinity if there is none within
+     *     maxDistance or no frame has been integrated
+     */
+    public synchronized double nearestObstacleAhead(double relativeHeading, double maxDistance) {
+        if (!posed) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return nearestObstacle(
+                lastPose[0],
+                lastPose[1],
+                lastPose[2] + relativeHeading,
+                maxDistance
+        );
+    }
+
+    /**
+     * @param x the x of the point
+     * @param y the y of the point
+     *
+     * @return the probability that the cell holding the point is occupied; 0.5 for unobserved cells and points
+     *     outside the grid
+     */
+    public synchronized double occupancy(double x, double y) {
+        int cx = (int) Math.floor((x - minX) / cellSize);
+        int cy = (int) Math.floor((y - minY) / cellSize);
+
+        if (cx < 0 || cy < 0 || cx >= cellsX || cy >= cellsY) {
+            return 0.5;
+        }
+
+        return 1 / (1 + Math.exp(-logOdds[cy * cellsX + cx] / LOG_ODDS_SCALE));
+    }
+
+    /**
+     * copies the grid, for example to draw it on a dashboard
+     *
+     * @param destination filled with each cell's log-odds in thousandths, row by row from the lower edge, cellsX per
+     *     row
+     */
+    public synchronized void readLogOdds(short[] destination) {
+        System.arraycopy(
+                logOdds,
+                0,
+                destination,
+                0,
+                logOdds.length
+        );
+    }
+
+    /**
+     * forgets every observation
+     */
+    public synchronized void clear() {
+        Arrays.fill(
+                logOdds,
+                (short) 0
+        );
+    }
+
+    /**
+     * @return the number of cells along x
+     */
+    public int cellsX() {
+        return cellsX;
+    }
+
+    /**
+     * @return the number of cells along y
+     */
+    public int cellsY() {
+        return cellsY;
+    }
+
+    /**
+     * @return the width of a cell in millimeters
+     */
+    public double cellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return the number of frames integrated
+     */
+    public synchronized long frames() {
+        return frames;
+    }
+}
@@ -0,0 +1,348 @@
+package org.openftc.i2cdrivers;
+
+/**
+ * dead-wheel odometry integrated inside {@link SRSHub#update()} from the quadrature encoders on the SRSHub, attached
+ * with {@link SRSHub#setOdometry(SRSHubOdometry)}
+ * <p>
+ * every decoded frame's wraparound-corrected encoder deltas are integrated as one constant-curvature arc, so the pose
+ * is as accurate as the hub's sample rate allows no matter how often it is read. repeated and corrupted frames carry no
+ * new movement and are not integrated
+ * <p>
+ * the robot frame is x forward, y left, heading counterclockwise in radians; offsets are in the same unit as the
+ * distance per tick
+ */
+public class SRSHubOdometry {
+    /**
+     * the robot's heading for the two-wheel configuration, such as an IMU or a GoBilda Pinpoint on the SRSHub
+     */
+    public interface HeadingSource {
+        /**
+         * called once per decoded frame on the thread calling update, after the frame's I2C devices have been parsed,
+         * so a device on the SRSHub reports the heading from the same frame as the encoders
+         *
+         * @return the current heading in radians, counterclockwise; only changes in it are used
+         */
+        double headingRadians();
+    }
+
+    private static final double SMALL_ANGLE = 1e-6;
+
+    private final int[] ports;
+    private final double[] distancesPerTick;
+
+    // two-wheel: the parallel wheel's lateral offset and the perpendicular wheel's forward offset; three-wheel: the
+    // track width and the perpendicular wheel's forward offset
+    private final double parallelOffset;
+    private final double perpendicularOffset;
+
+    private final HeadingSource headingSource;
+
+    private double lastSourceHeading = Double.NaN;
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+
+    private long frames = 0;
+
+    private SRSHubOdometry(
+            int[] ports,
+            double distancePerTick,
+            double parallelOffset,
+            double perpendicularOffset,
+            HeadingSource headingSource
+    ) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] < 1 || ports[i] > 6) {
+                SRSHub.throwException(
+                        IndexOutOfBoundsException.class,
+                        "Encoder port " +
+                                "must be from 1 to 6"
+                );
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (ports[j] == ports[i]) {
+                    SRSHub.throwException(
+                            IllegalArgumentException.class,
+                            "Encoder port #" + ports[i] +
+                                    " is used by more than one odometry wheel"
+                    );
+                }
+            }
+        }
+
+        if (distancePerTick == 0 || Double.isNaN(distancePerTick) || Double.isInfinite(distancePerTick)) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Distance per tick must be finite and nonzero"
+            );
+        }
+
+        this.ports = ports;
+        this.parallelOffset = parallelOffset;
+        this.perpendicularOffset = perpendicularOffset;
+        this.headingSource = headingSource;
+
+        distancesPerTick = new double[ports.length];
+
+        for (int i = 0; i < ports.length; i++) {
+            distancesPerTick[i] = distancePerTick;
+        }
+    }
+
+    /**
+     * creates odometry from one forward-facing wheel, one sideways-facing wheel and an external heading
+     *
+     * @param parallelPort the encoder port of the forward-facing wheel, from 1 to 6
+     * @param parallelOffset how far left of the tracking center the forward-facing wheel is
+     * @param perpendicularPort the encoder port of the sideways-facing wheel, from 1 to 6
+     * @param perpendicularOffset how far forward of the tracking center the sideways-facing wheel is
+     * @param distancePerTick the distance traveled per encoder tick
+     * @param headingSource the robot's heading
+     *
+     * @return the odometry, at the origin
+     *
+     * @throws IndexOutOfBoundsException if a port is not between 1 and 6, inclusive
+     * @throws IllegalArgumentException if both wheels use the same port or the distance per tick is zero
+     */
+    public static SRSHubOdometry twoWheel(
+            int parallelPort,
+            double parallelOffset,
+            int perpendicularPort,
+            double perpendicularOffset,
+            double distancePerTick,
+            HeadingSource headingSource
+    ) {
+        if (headingSource == null) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Two-wheel odometry requires a heading source"
+            );
+        }
+
+        return new SRSHubOdometry(
+                new int[]{
+                        parallelPort,
+                        perpendicularPort
+                },
+                distancePerTick,
+                parallelOffset,
+                perpendicularOffset,
+                headingSource
+        );
+    }
+
+    /**
+     * creates odometry from two forward-facing wheels, which give the heading, and one sideways-facing wheel
+     *
+     * @param leftPort the encoder port of the left forward-facing wheel, from 1 to 6
+     * @param rightPort the encoder port of the right forward-facing wheel, from 1 to 6
+     * @param perpendicularPort the encoder port of the sideways-facing wheel, from 1 to 6
+     * @param trackWidth the lateral distance between the two forward-facing wheels
+     * @param perpendicularOffset how far forward of the tracking center the sideways-facing wheel is
+     * @param distancePerTick the distance traveled per encoder tick
+     *
+     * @return the odometry, at the origin
+     *
+     * @throws IndexOutOfBoundsException if a port is not between 1 and 6, inclusive
+     * @throws IllegalArgumentException if two wheels use the same port, the track width is not positive or the distance
+     *     per tick is zero
+     */
+    public static SRSHubOdometry threeWheel(
+            int leftPort,
+            int rightPort,
+            int perpendicularPort,
+            double trackWidth,
+            double perpendicularOffset,
+            double distancePerTick
+    ) {
+        if (!(trackWidth > 0)) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Track width must be positive"
+            );
+        }
+
+        return new SRSHubOdometry(
+                new int[]{
+                        leftPort,
+                        rightPort,
+                        perpendicularPort
+                },
+                distancePerTick,
+                trackWidth,
+                perpendicularOffset,
+                null
+        );
+    }
+
+    /**
+     * reverses the direction of one odometry wheel's encoder
+     *
+     * @param port the encoder port of the wheel
+     * @param reversed whether positive ticks move the wheel backward (or right, for a sideways-facing wheel)
+     *
+     * @throws IllegalArgumentException if no odometry wheel uses the port
+     */
+    public synchronized void setReversed(int port, boolean reversed) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] == port) {
+                distancesPerTick[i] = Math.abs(distancesPerTick[i]) * (reversed ? -1 : 1);
+
+                return;
+            }
+        }
+
+        SRSHub.throwException(
+                IllegalArgumentException.class,
+                "Encoder port #" + port +
+                        " is not an odometry wheel"
+        );
+    }
+
+    /**
+     * @return the encoder ports of the odometry wheels
+     */
+    int[] ports() {
+        return ports;
+    }
+
+    void validate(SRSHub.Config config) {
+        for (int port : ports) {
+            if (config.encoders[port - 1] != SRSHub.Encoder.QUADRATURE) {
+                SRSHub.throwException(
+                        IllegalArgumentException.class,
+                        "Encoder port #" + port +
+                                " must be configured as quadrature for odometry"
+                );
+            }
+        }
+    }
+
+    // the hub restarted, so the heading source may have restarted with it
+    synchronized void restart() {
+        lastSourceHeading = Double.NaN;
+    }
+
+    synchronized void integrate(long[] quadratureDeltas) {
+        double deltaHeading;
+        double deltaX;
+        double deltaY;
+
+        if (headingSource != null) {
+            double parallel = quadratureDeltas[ports[0] - 1] * distancesPerTick[0];
+            double perpendicular = quadratureDeltas[ports[1] - 1] * distancesPerTick[1];
+
+            double sourceHeading = headingSource.headingRadians();
+
+            deltaHeading = Double.isNaN(lastSourceHeading) ? 0 : normalize(sourceHeading - lastSourceHeading);
+
+            lastSourceHeading = sourceHeading;
+
+            deltaX = parallel + parallelOffset * deltaHeading;
+            deltaY = perpendicular - perpendicularOffset * deltaHeading;
+        }
+        else {
+            double left = quadratureDeltas[ports[0] - 1] * distancesPerTick[0];
+            double right = quadratureDeltas[ports[1] - 1] * distancesPerTick[1];
+            double perpendicular = quadratureDeltas[ports[2] - 1] * distancesPerTick[2];
+
+            deltaHeading = (right - left) / parallelOffset;
+
+            deltaX = (left + right) / 2;
+            deltaY = perpendicular - perpendicularOffset * deltaHeading;
+        }
+
+        // integrates the movement as an arc of constant curvature rather than a straight line
+        double sinTerm;
+        double cosTerm;
+
+        if (Math.abs(deltaHeading) < SMALL_ANGLE) {
+            sinTerm = 1 - deltaHeading * deltaHeading / 6;
+            cosTerm = deltaHeading / 2;
+        }
+        else {
+            sinTerm = Math.sin(deltaHeading) / deltaHeading;
+            cosTerm = (1 - Math.cos(deltaHeading)) / deltaHeading;
+        }
+
+        double arcX = deltaX * sinTerm - deltaY * cosTerm;
+        double arcY = deltaX * cosTerm + deltaY * sinTerm;
+
+        double sin = Math.sin(heading);
+        double cos = Math.cos(heading);
+
+        x += arcX * cos - arcY * sin;
+        y += arcX * sin + arcY * cos;
+
+        heading = normalize(heading + deltaHeading);
+
+        frames++;
+    }
+
+    private static double normalize(double angle) {
+        angle %= 2 * Math.PI;
+
+        if (angle > Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        else if (angle <= -Math.PI) {
+            angle += 2 * Math.PI;
+        }
+
+        return angle;
+    }
+
+    /**
+     * moves the pose, for example to the robot's starting position
+     *
+     * @param x the x position
+     * @param y the y position
+     * @param heading the heading in radians
+     */
+    public synchronized void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = normalize(heading);
+    }
+
+    /**
+     * @return the x position
+     */
+    public synchronized double x() {
+        return x;
+    }
+
+    /**
+     * @return the y position
+     */
+    public synchronized double y() {
+        return y;
+    }
+
+    /**
+     * @return the heading in radians, from -pi to pi
+     */
+    public synchronized double heading() {
+        return heading;
+    }
+
+    /**
+     * reads the whole pose at once, consistent even while another thread is updating the SRSHub
+     *
+     * @param pose filled with x, y and heading
+     */
+    public synchronized void readPose(double[] pose) {
+        pose[0] = x;
+        pose[1] = y;
+        pose[2] = heading;
+    }
+
+    /**
+     * @return the number of frames integrated
+     */
+    public synchronized long frames() {
+        return frames;
+    }
+}
@@ -0,0 +1,637 @@
+package org.openftc.i2cdrivers;
+
+import com.qualcomm.hardware.lynx.LynxI2cDeviceSynch;
+import com.qualcomm.robotcore.hardware.I2cDeviceSynchSimple;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * schedules the transactions of every device on a shared I2C port, so that a device that cannot wait is not stuck
+ * behind another device's long bulk-read
+ * <p>
+ * each device on the port is registered with its own device client and a priority, and is then driven through the
+ * client returned by {@link Device#deviceClient()}. whenever the port is free it is granted to the waiting transaction
+ * of the highest priority, then the earliest deadline, then the earliest arrival. transactions cannot be preempted, so
+ * a device that declares its period with {@link Device#setSchedule} is also protected ahead of time: a lower priority
+ * transaction that would still be running when the periodic device is next due is held back until it has gone,
+ * provided the held transaction can still meet its own deadline
+ * <p>
+ * pass the SRSHub's arbitrated client to the SRSHub constructor and declare its schedule with
+ * {@link SRSHub#setUpdateSchedule}
+ */
+public class SRSHubPortArbiter {
+    // the smoothing applied to each device's measured transaction time
+    private static final double DURATION_SMOOTHING = 0.1;
+
+    // how long past its predicted release a periodic device is waited for before the port is given to others
+    private static final long RELEASE_GRACE_NANOS = 200_000;
+
+    // the number of recent waits kept per device for percentiles
+    private static final int WAIT_HISTORY = 1024;
+
+    // the deadline of a transaction of an aperiodic device
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition portChanged = lock.newCondition();
+
+    private final ArrayList<Device> devices = new ArrayList<>();
+    private final ArrayList<Ticket> waiting = new ArrayList<>();
+
+    private boolean busy = false;
+    private long arrivals = 0;
+
+    // when the port went idle while transactions were waiting, or 0
+    private long idleSinceNanos = 0;
+
+    private long holds = 0;
+    private long heldNanos = 0;
+
+    /**
+     * a device registered on the port, with its schedule and wait statistics
+     */
+    public class Device {
+        private final String name;
+        private final int priority;
+        private final I2cDeviceSynchSimple transport;
+        private final I2cDeviceSynchSimple deviceClient;
+
+        private long periodNanos = 0;
+        private long budgetNanos = 0;
+
+        private long nextReleaseNanos = 0;
+        private double durationNanos = 0;
+
+        private long transactions = 0;
+        private long totalWaitNanos = 0;
+        private long maxWaitNanos = 0;
+        private long deadlineMisses = 0;
+
+        private final long[] recentWaits = new long[WAIT_HISTORY];
+
+        private Device(String name, int priority, I2cDeviceSynchSimple transport) {
+            this.name = name;
+            this.priority = priority;
+            this.transport = transport;
+
+            LinkedHashSet<Class<?>> interfaces = new LinkedHashSet<>();
+
+            for (Class<?> type = transport.getClass(); type != null; type = type.getSuperclass()) {
+                interfaces.addAll(Arrays.asList(type.getInterfaces()));
+            }
+
+            interfaces.add(I2cDeviceSynchSimple.class);
+
+            deviceClient = (I2cDeviceSynchSimple) Proxy.newProxyInstance(
+                    I2cDeviceSynchSimple.class.getClassLoader(),
+                    interfaces.toArray(new Class<?>[0]),
+                    new DeviceClientHandler(this)
+            );
+        }
+
+        /**
+         * @return the device client to drive the device through; it implements every interface of the registered
+         *     device client, and its reads and writes wait for the port
+         */
+        public I2cDeviceSynchSimple deviceClient() {
+            return deviceClient;
+        }
+
+        /**
+         * @return the name the device was registered with
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the priority the device was registered with
+         */
+        public int priority() {
+            return priority;
+        }
+
+        /**
+         * declares that the device starts a transaction every periodMicros, each of which must finish before the next
+         * one starts and holds the port for at most budgetMicros
+         *
+         * @param periodMicros the period, in microseconds; 0 makes the device aperiodic again
+         * @param budgetMicros the longest time one transaction holds the port, in microseconds; 0 uses the measured
+         *     transaction time
+         *
+         * @throws IllegalArgumentException if either value is negative
+         */
+        public void setSchedule(long periodMicros, long budgetMicros) {
+            if (periodMicros < 0 || budgetMicros < 0) {
+                SRSHub.throwException(
+                        IllegalArgumentException.class,
+                        "Schedule period and budget must not be negative"
+                );
+            }
+
+            lock.lock();
+
+            try {
+                periodNanos = periodMicros * 1000;
+                budgetNanos = budgetMicros * 1000;
+                nextReleaseNanos = 0;
+
+                portChanged.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * sets the bus speed of the registered device client, which the arbitrated device client cannot take itself
+         * since the SDK's I2C client is a class rather than an interface
+         *
+         * @param busSpeed the bus speed
+         *
+         * @return whether the registered device client could take a bus speed
+         */
+        public boolean setBusSpeed(LynxI2cDeviceSynch.BusSpeed busSpeed) {
+            return SRSHub.setBusSpeed(
+                    transport,
+                    busSpeed
+            );
+        }
+
+        /**
+         * @return the number of transactions completed since registration or the last reset
+         */
+        public long transactions() {
+            lock.lock();
+
+            try {
+                return transactions;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the mean time transactions waited for the port, in microseconds
+         */
+        public double meanWaitMicros() {
+            lock.lock();
+
+            try {
+                return transactions == 0 ? 0 : totalWaitNanos / 1000.0 / transactions;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the longest time a transaction waited for the port, in microseconds
+         */
+        public double maxWaitMicros() {
+            lock.lock();
+
+            try {
+                return maxWaitNanos / 1000.0;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @param fraction the percentile, from 0 to 1
+         *
+         * @return the given percentile of the time the most recent transactions waited for the port, in microseconds
+         */
+        public double waitPercentileMicros(double fraction) {
+            long[] waits;
+
+            lock.lock();
+
+            try {
+                waits = Arrays.copyOf(
+                        recentWaits,
+                        (int) Math.min(
+                                transactions,
+                                WAIT_HISTORY
+                        )
+                );
+            }
+            finally {
+                lock.unlock();
+            }
+
+            if (waits.length == 0) {
+                return 0;
+            }
+
+            Arrays.sort(waits);
+
+            return waits[(int) Math.min(
+                    waits.length - 1,
+                    Math.floor(waits.length * fraction)
+            )] / 1000.0;
+        }
+
+        /**
+         * @return the number of transactions of a periodic device that finished after the start of its next period
+         */
+        public long deadlineMisses() {
+            lock.lock();
+
+            try {
+                return deadlineMisses;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * clears the wait statistics
+         */
+        public void resetStats() {
+            lock.lock();
+
+            try {
+                transactions = 0;
+                totalWaitNanos = 0;
+                maxWaitNanos = 0;
+                deadlineMisses = 0;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        // the time the port is expected to be held by one transaction
+        private long expectedNanos() {
+            return budgetNanos > 0 ? budgetNanos : (long) durationNanos;
+        }
+    }
+
+    private static class Ticket {
+        final Device device;
+        final long arrival;
+        final long arrivalNanos;
+        final long deadlineNanos;
+
+        // the end of the one window in which the ticket is held back, once it has been
+        boolean held = false;
+        long holdUntilNanos;
+
+        Ticket(Device device, long arrival, long arrivalNanos, long deadlineNanos) {
+            this.device = device;
+            this.arrival = arrival;
+            this.arrivalNanos = arrivalNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        // whether this ticket should be granted the port before another
+        boolean precedes(Ticket other) {
+            if (device.priority != other.device.priority) {
+                return device.priority > other.device.priority;
+            }
+
+            if (deadlineNanos != other.deadlineNanos) {
+                return other.deadlineNanos == NO_DEADLINE ||
+                        deadlineNanos != NO_DEADLINE && deadlineNanos - other.deadlineNanos < 0;
+            }
+
+            return arrival < other.arrival;
+        }
+    }
+
+    /**
+     * registers a device on the port
+     *
+     * @param name a name for the device, used in reports
+     * @param priority the device's priority; higher values are served first
+     * @param transport the device's own device client, which must not be used directly from now on
+     *
+     * @return the registered device, whose device client is to be used in place of transport
+     */
+    public Device register(String name, int priority, I2cDeviceSynchSimple transport) {
+        Device device = new Device(
+                name,
+                priority,
+                transport
+        );
+
+        lock.lock();
+
+        try {
+            devices.add(device);
+        }
+        finally {
+            lock.unlock();
+        }
+
+        return device;
+    }
+
+    /**
+     * @return every registered device, in registration order
+     */
+    public Device[] devices() {
+        lock.lock();
+
+        try {
+            return devices.toArray(new Device[0]);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of transactions held back for a periodic device that was about to be due
+     */
+    public long holds() {
+        lock.lock();
+
+        try {
+            return holds;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time the port sat idle while every waiting transaction was held back, in microseconds
+     */
+    public double heldMicros() {
+        lock.lock();
+
+        try {
+            return heldNanos / 1000.0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param deviceClient a device client
+     *
+     * @return the registered device whose device client it is, or null if it does not belong to an arbiter
+     */
+    static Device deviceOf(I2cDeviceSynchSimple deviceClient) {
+        if (deviceClient != null && Proxy.isProxyClass(deviceClient.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(deviceClient);
+
+            if (handler instanceof DeviceClientHandler) {
+                return ((DeviceClientHandler) handler).device;
+            }
+        }
+
+        return null;
+    }
+
+    private Ticket acquire(Device device) {
+        boolean interrupted = false;
+
+        lock.lock();
+
+        try {
+            long now = System.nanoTime();
+
+            Ticket ticket = new Ticket(
+                    device,
+                    arrivals++,
+                    now,
+                    device.periodNanos > 0 ? now + device.periodNanos : NO_DEADLINE
+            );
+
+            if (device.periodNanos > 0) {
+                device.nextReleaseNanos = now + device.periodNanos;
+            }
+
+            waiting.add(ticket);
+
+            // a ticket holding the port for this device may no longer be first
+            portChanged.signalAll();
+
+            while (true) {
+                try {
+                    if (busy) {
+                        portChanged.await();
+
+                        continue;
+                    }
+
+                    now = System.nanoTime();
+
+                    Ticket next = next(now);
+
+                    if (next == ticket) {
+                        break;
+                    }
+
+                    long holdUntil = holdUntil(
+                            ticket,
+                            now
+                    );
+
+                    if (holdUntil - now > 0) {
+                        if (next == null && idleSinceNanos == 0) {
+                            idleSinceNanos = now;
+                        }
+
+                        portChanged.awaitNanos(holdUntil - now);
+                    }
+                    else {
+                        portChanged.await();
+                    }
+                }
+                catch (InterruptedException e) {
+                    // an abandoned transaction would leave the port to collide with the next, so finish waiting
+                    interrupted = true;
+                }
+            }
+
+            now = System.nanoTime();
+
+            if (idleSinceNanos != 0) {
+                heldNanos += now - idleSinceNanos;
+                idleSinceNanos = 0;
+            }
+
+            waiting.remove(ticket);
+            busy = true;
+
+            long wait = now - ticket.arrivalNanos;
+
+            device.recentWaits[(int) (device.transactions % WAIT_HISTORY)] = wait;
+            device.totalWaitNanos += wait;
+            device.maxWaitNanos = Math.max(
+                    device.maxWaitNanos,
+                    wait
+            );
+
+            return ticket;
+        }
+        finally {
+            lock.unlock();
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void release(Ticket ticket, long startNanos) {
+        lock.lock();
+
+        try {
+            long now = System.nanoTime();
+
+            Device device = ticket.device;
+
+            double duration = now - startNanos;
+
+            device.durationNanos = device.transactions == 0 ? duration :
+                    device.durationNanos + DURATION_SMOOTHING * (duration - device.durationNanos);
+
+            device.transactions++;
+
+            if (ticket.deadlineNanos != NO_DEADLINE && now - ticket.deadlineNanos > 0) {
+                device.deadlineMisses++;
+            }
+
+            busy = false;
+
+            portChanged.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // the ticket to grant the port to: the first in order of precedence that need not be held back, so that a short
+    // transaction can use the port while a longer one waits for a periodic device to go first
+    private Ticket next(long now) {
+        Ticket next = null;
+
+        for (Ticket ticket : waiting) {
+            if ((next == null || ticket.precedes(next)) && holdUntil(ticket, now) - now <= 0) {
+                next = ticket;
+            }
+        }
+
+        return next;
+    }
+
+    // the time until which the port should stay idle rather than start the ticket, because a periodic device of higher
+    // priority is due before the ticket would finish
+    private long holdUntil(Ticket ticket, long now) {
+        // a transaction is held back at most once, so that a run of periodic devices cannot starve it
+        if (ticket.held) {
+            return ticket.holdUntilNanos;
+        }
+
+        long expected = ticket.device.expectedNanos();
+        long holdUntil = now;
+
+        for (Device device : devices) {
+            if (device.priority <= ticket.device.priority || device.periodNanos == 0 || device.nextReleaseNanos == 0) {
+                continue;
+            }
+
+            long release = device.nextReleaseNanos;
+
+            // a device that is late for its release is only waited for briefly
+            if (now - (release + RELEASE_GRACE_NANOS) >= 0 || release - (now + expected) >= 0) {
+                continue;
+            }
+
+            // the held ticket must still be able to finish in time once the periodic device is done
+            if (ticket.deadlineNanos != NO_DEADLINE &&
+                    ticket.deadlineNanos - (release + device.expectedNanos() + expected) < 0) {
+                continue;
+            }
+
+            if (release + RELEASE_GRACE_NANOS - holdUntil > 0) {
+                holdUntil = release + RELEASE_GRACE_NANOS;
+            }
+        }
+
+        if (holdUntil != now) {
+            ticket.held = true;
+            ticket.holdUntilNanos = holdUntil;
+
+            holds++;
+        }
+
+        return holdUntil;
+    }
+
+    private class DeviceClientHandler implements InvocationHandler {
+        final Device device;
+
+        DeviceClientHandler(Device device) {
+            this.device = device;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            }
+
+            if (name.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            }
+
+            // only transactions go through the port; configuration such as the address passes straight through, and the
+            // bus speed is set through Device.setBusSpeed
+            if (!name.startsWith("read") && !name.startsWith("write")) {
+                return call(
+                        method,
+                        args
+                );
+            }
+
+            Ticket ticket = acquire(device);
+
+            long start = System.nanoTime();
+
+            try {
+                return call(
+                        method,
+                        args
+                );
+            }
+            finally {
+                release(
+                        ticket,
+                        start
+                );
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(
+                        device.transport,
+                        args
+                );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.openftc.i2cdrivers;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * drives SRSHub updates at a fixed period on a dedicated thread
+ * <p>
+ * updates are aligned to a grid of deadlines (start + k * period); the thread sleeps until shortly before each deadline
+ * and spins for the remainder. when an update overruns, the deadlines it missed are dropped rather than run late, so
+ * the schedule never drifts
+ * <p>
+ * while the scheduler is running it is the only caller of {@link SRSHub#update()}; do not call update from other
+ * threads
+ */
+public class SRSHubScheduler {
+    private static final long DEFAULT_SPIN_NANOS = 200_000;
+
+    // the fraction of recent cycles that may be dropped while still keeping up
+    private static final double KEEPING_UP_THRESHOLD = 0.01;
+    private static final double DROP_RATE_SMOOTHING = 0.02;
+
+    private final SRSHub hub;
+    private final long periodNanos;
+    private final long spinNanos;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private long updates = 0;
+    private long droppedCycles = 0;
+    private long overruns = 0;
+
+    private long lastUpdateNanos = 0;
+
+    private double meanInterval = 0;
+    private double intervalM2 = 0;
+    private long intervalCount = 0;
+
+    private long maxLatenessNanos = 0;
+    private long maxUpdateNanos = 0;
+
+    private double recentDropRate = 0;
+
+    /**
+     * @param hub the SRSHub to update; it must already have been initialized
+     * @param periodNanos the target period between updates, in nanoseconds
+     */
+    public SRSHubScheduler(SRSHub hub, long periodNanos) {
+        this(
+                hub,
+                periodNanos,
+                DEFAULT_SPIN_NANOS
+        );
+    }
+
+    /**
+     * @param hub the SRSHub to update; it must already have been initialized
+     * @param periodNanos the target period between updates, in nanoseconds
+     * @param spinNanos how long before each deadline to stop sleeping and start spinning, in nanoseconds; larger values
+     *     reduce jitter at the cost of CPU time
+     */
+    public SRSHubScheduler(SRSHub hub, long periodNanos, long spinNanos) {
+        if (periodNanos <= 0) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Scheduler period must be positive"
+            );
+        }
+
+        this.hub = hub;
+        this.periodNanos = periodNanos;
+        this.spinNanos = Math.max(
+                0,
+                spinNanos
+        );
+    }
+
+    /**
+     * starts updating the SRSHub on a dedicated thread
+     *
+     * @throws IllegalStateException if the SRSHub has not finished initializing or the scheduler is already running
+     */
+    public synchronized void start() {
+        if (!hub.ready()) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "The SRSHub must be initialized before scheduling updates"
+            );
+        }
+
+        if (running) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "The scheduler is already running"
+            );
+        }
+
+        running = true;
+
+        thread = new Thread(
+                new Runnable() {
+                    public void run() {
+                        loop();
+                    }
+                },
+                "SRSHubScheduler"
+        );
+
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * stops the scheduler and waits for the in-flight update to finish
+     */
+    public void stop() {
+        Thread current;
+
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+
+        if (current != null && current != Thread.currentThread()) {
+            try {
+                current.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void loop() {
+        long deadline = System.nanoTime();
+
+        while (running) {
+            waitUntil(deadline);
+
+            long start = System.nanoTime();
+
+            hub.update();
+
+            long end = System.nanoTime();
+
+            deadline += periodNanos;
+
+            long dropped = 0;
+
+            if (end > deadline) {
+                dropped = (end - deadline) / periodNanos + 1;
+                deadline += dropped * periodNanos;
+            }
+
+            record(
+                    start,
+                    end,
+                    deadline - (dropped + 1) * periodNanos,
+                    dropped
+            );
+        }
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+
+        if (remaining > spinNanos) {
+            LockSupport.parkNanos(remaining - spinNanos);
+        }
+
+        while (System.nanoTime() < deadline) {
+            // spin for the final stretch; parking is too coarse to hit the deadline precisely
+        }
+    }
+
+    private synchronized void record(long start, long end, long deadline, long dropped) {
+        if (updates > 0) {
+            long interval = start - lastUpdateNanos;
+
+            intervalCount++;
+
+            double delta = interval - meanInterval;
+
+            meanInterval += delta / intervalCount;
+            intervalM2 += delta * (interval - meanInterval);
+        }
+
+        maxLatenessNanos = Math.max(
+                maxLatenessNanos,
+                start - deadline
+        );
+
+        maxUpdateNanos = Math.max(
+                maxUpdateNanos,
+                end - start
+        );
+
+        if (dropped > 0) {
+            overruns++;
+            droppedCycles += dropped;
+        }
+
+        recentDropRate += DROP_RATE_SMOOTHING * ((dropped > 0 ? 1 : 0) - recentDropRate);
+
+        lastUpdateNanos = start;
+        updates++;
+    }
+
+    /**
+     * clears the interval statistics, overrun and dropped cycle counts
+     */
+    public synchronized void resetStatistics() {
+        updates = 0;
+        droppedCycles = 0;
+        overruns = 0;
+
+        meanInterval = 0;
+        intervalM2 = 0;
+        intervalCount = 0;
+
+        maxLatenessNanos = 0;
+        maxUpdateNanos = 0;
+
+        recentDropRate = 0;
+    }
+
+    /**
+     * @return whether the scheduler thread is running
+     */
+    public boolean running() {
+        return running;
+    }
+
+    /**
+     * @return the target period between updates, in nanoseconds
+     */
+    public long periodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return whether recent updates are completing within the period; false once more than 1% of recent cycles have
+     *     been dropped
+     */
+    public synchronized boolean keepingUp() {
+        return recentDropRate <= KEEPING_UP_THRESHOLD;
+    }
+
+    /**
+     * @return the number of updates performed
+     */
+    public synchronized long updates() {
+        return updates;
+    }
+
+    /**
+     * @return the number of updates that ran past the following deadline
+     */
+    public synchronized long overruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the number of cycles skipped to recover from overruns
+     */
+    public synchronized long droppedCycles() {
+        return droppedCycles;
+    }
+
+    /**
+     * @return the System.nanoTime() at which the most recent update started
+     */
+    public synchronized long lastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /**
+     * @return the mean interval between the starts of consecutive updates, in nanoseconds; this exceeds the period
+     *     when cycles are dropped
+     */
+    public synchronized double meanIntervalNanos() {
+        return meanInterval;
+    }
+
+    /**
+     * @return the standard deviation of the interval between the starts of consecutive updates, in nanoseconds
+     */
+    public synchronized double intervalJitterNanos() {
+        return intervalCount > 1 ? Math.sqrt(intervalM2 / (intervalCount - 1)) : 0;
+    }
+
+    /**
+     * @return the largest delay between a deadline and the start of its update, in nanoseconds
+     */
+    public synchronized long maxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * @return the longest single update, in nanoseconds
+     */
+    public synchronized long maxUpdateNanos() {
+        return maxUpdateNanos;
+    }
+}
@@ -0,0 +1,572 @@
+package org.openftc.i2cdrivers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * the binary format written by {@link SRSHubTelemetryStreamer}, and a receiver that decodes it
+ * <p>
+ * this class only depends on java.*, so it can be copied into a host-side project to receive telemetry on a laptop
+ * <p>
+ * records are sent in batches; every value is big-endian. a batch is:
+ * <pre>
+ * u16 magic, u8 version, u8 record count, u16 length of the records that follow
+ * </pre>
+ * and each record is:
+ * <pre>
+ * u16 length of the rest of the record
+ * u32 sequence, i64 timestamp in System.nanoTime() of the robot, u8 flags (bit 0: update failed)
+ * u16 analog pin mask, u16 digital pin mask, then u16 12-bit value per configured pin in pin order
+ * u8 encoder mask, then i64 position and i32 velocity per configured port in port order
+ * u8 device count, then per device:
+ *     u8 bus, u8 type, u8 flags (bit 0: disconnected, bit 1: values are signed), u8 value count, u8 value width in
+ *     bytes, then the values
+ * </pre>
+ * sequences increase by one per captured frame, so gaps count records dropped by the streamer's queue or the network
+ */
+public final class SRSHubTelemetry {
+    static final int MAGIC = 0x5348;
+    static final int VERSION = 1;
+
+    static final int BATCH_HEADER_LENGTH = 6;
+    static final int MAX_RECORDS_PER_BATCH = 255;
+
+    static final int RECORD_FLAG_DISCONNECTED = 1;
+
+    static final int DEVICE_FLAG_DISCONNECTED = 1;
+    static final int DEVICE_FLAG_SIGNED = 2;
+
+    /**
+     * device types, as in the SRSHub's INIT register
+     */
+    public static final int TYPE_APDS9151 = 0;
+    public static final int TYPE_VL53L5CX = 1;
+    public static final int TYPE_VL53L0X = 2;
+    public static final int TYPE_GOBILDA_PINPOINT = 3;
+
+    private SRSHubTelemetry() {
+    }
+
+    /**
+     * one I2C device of a decoded record
+     */
+    public static class Device {
+        public int bus;
+        public int type;
+        public boolean disconnected;
+
+        /**
+         * the device's values in the order of its layout; only the first valueCount are valid
+         */
+        public int[] values = new int[0];
+        public int valueCount;
+
+        /**
+         * @param index the index of a float32 field in the device's layout
+         *
+         * @return the value of the field
+         */
+        public float floatValue(int index) {
+            return Float.intBitsToFloat(values[index]);
+        }
+    }
+
+    /**
+     * one decoded frame; receivers refill the same record, so it does not allocate once its arrays have grown
+     */
+    public static class Record {
+        public long sequence;
+        public long timestampNanos;
+        public boolean disconnected;
+
+        /**
+         * bit n is set if pin n + 1 was configured as analog or digital, respectively
+         */
+        public int analogMask;
+        public int digitalMask;
+
+        /**
+         * indexed by pin - 1; from 0 to 1 for analog pins and 0 or 1 for digital pins
+         */
+        public final double[] analogDigitalValues = new double[12];
+
+        /**
+         * bit n is set if port n + 1 was configured
+         */
+        public int encoderMask;
+
+        /**
+         * indexed by port - 1
+         */
+        public final long[] encoderPositions = new long[6];
+        public final int[] encoderVelocities = new int[6];
+
+        public Device[] devices = new Device[0];
+        public int deviceCount;
+
+        /**
+         * @param bus the bus of the device, from 1 to 3
+         * @param type one of the TYPE_ constants
+         *
+         * @return the first device of the type on the bus, or null if the record has none
+         */
+        public Device getDevice(int bus, int type) {
+            for (int i = 0; i < deviceCount; i++) {
+                if (devices[i].bus == bus && devices[i].type == type) {
+                    return devices[i];
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * decodes one record
+     *
+     * @param buffer a buffer positioned at the start of a record; on return it is positioned at the next record
+     * @param record the record to fill
+     *
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static void decode(ByteBuffer buffer, Record record) {
+        int length = buffer.getShort() & 0xFFFF;
+        int end = buffer.position() + length;
+
+        if (end > buffer.limit()) {
+            throw new IllegalArgumentException("Telemetry record overruns its batch");
+        }
+
+        record.sequence = buffer.getInt() & 0xFFFFFFFFL;
+        record.timestampNanos = buffer.getLong();
+        record.disconnected = (buffer.get() & RECORD_FLAG_DISCONNECTED) != 0;
+
+        record.analogMask = buffer.getShort() & 0xFFFF;
+        record.digitalMask = buffer.getShort() & 0xFFFF;
+
+        for (int i = 0; i < 12; i++) {
+            if (((record.analogMask | record.digitalMask) >> i & 1) == 0) {
+                record.analogDigitalValues[i] = 0;
+
+                continue;
+            }
+
+            int raw = buffer.getShort() & 0xFFFF;
+
+            record.analogDigitalValues[i] = (record.digitalMask >> i & 1) == 1 ? raw : raw / (double) 4095;
+        }
+
+        record.encoderMask = buffer.get() & 0xFF;
+
+        for (int i = 0; i < 6; i++) {
+            if ((record.encoderMask >> i & 1) == 0) {
+                record.encoderPositions[i] = 0;
+                record.encoderVelocities[i] = 0;
+
+                continue;
+            }
+
+            record.encoderPositions[i] = buffer.getLong();
+            record.encoderVelocities[i] = buffer.getInt();
+        }
+
+        record.deviceCount = buffer.get() & 0xFF;
+
+        if (record.devices.length < record.deviceCount) {
+            Device[] devices = new Device[record.deviceCount];
+
+            System.arraycopy(
+                    record.devices,
+                    0,
+                    devices,
+                    0,
+                    record.devices.length
+            );
+
+            for (int i = record.devices.length; i < devices.length; i++) {
+                devices[i] = new Device();
+            }
+
+            record.devices = devices;
+        }
+
+        for (int i = 0; i < record.deviceCount; i++) {
+            Device device = record.devices[i];
+
+            device.bus = buffer.get() & 0xFF;
+            device.type = buffer.get() & 0xFF;
+
+            int flags = buffer.get() & 0xFF;
+
+            device.disconnected = (flags & DEVICE_FLAG_DISCONNECTED) != 0;
+            device.valueCount = buffer.get() & 0xFF;
+
+            int width = buffer.get() & 0xFF;
+
+            if (device.values.length < device.valueCount) {
+                device.values = new int[device.valueCount];
+            }
+
+            for (int k = 0; k < device.valueCount; k++) {
+                int value;
+
+                switch (width) {
+                    case 1:
+                        value = (flags & DEVICE_FLAG_SIGNED) != 0 ? buffer.get() : buffer.get() & 0xFF;
+
+                        break;
+                    case 2:
+                        value = (flags & DEVICE_FLAG_SIGNED) != 0 ? buffer.getShort() : buffer.getShort() & 0xFFFF;
+
+                        break;
+                    case 4:
+                        value = buffer.getInt();
+
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Telemetry value width must be 1, 2 or 4 bytes");
+                }
+
+                device.values[k] = value;
+            }
+        }
+
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Telemetry record length does not match its contents");
+        }
+    }
+
+    /**
+     * listens for an SRSHubTelemetryStreamer and decodes its records
+     * <p>
+     * over TCP the receiver accepts one streamer at a time, and accepts the next one once it disconnects
+     */
+    public static class Receiver implements Closeable {
+        // the largest batch the header can describe
+        private static final int BUFFER_LENGTH = BATCH_HEADER_LENGTH + 0xFFFF;
+
+        private final Selector selector;
+        private final DatagramChannel datagramChannel;
+        private final ServerSocketChannel serverChannel;
+
+        private SocketChannel socketChannel;
+
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_LENGTH);
+        private final ByteBuffer batch;
+
+        private int remainingRecords = 0;
+
+        private long records = 0;
+        private long lostRecords = 0;
+        private long malformedBatches = 0;
+        private long lastSequence = -1;
+
+        private Receiver(DatagramChannel datagramChannel, ServerSocketChannel serverChannel) throws IOException {
+            this.datagramChannel = datagramChannel;
+            this.serverChannel = serverChannel;
+
+            selector = Selector.open();
+
+            if (datagramChannel != null) {
+                datagramChannel.configureBlocking(false);
+                datagramChannel.register(
+                        selector,
+                        SelectionKey.OP_READ
+                );
+            }
+            else {
+                serverChannel.configureBlocking(false);
+                serverChannel.register(
+                        selector,
+                        SelectionKey.OP_ACCEPT
+                );
+            }
+
+            batch = input.duplicate();
+            batch.limit(0);
+        }
+
+        /**
+         * @param port the local UDP port to receive datagrams on
+         *
+         * @return a receiver for a streamer using SRSHubTelemetryStreamer.Transport.UDP
+         */
+        public static Receiver udp(int port) throws IOException {
+            DatagramChannel channel = DatagramChannel.open();
+
+            channel
+                    .socket()
+                    .bind(new InetSocketAddress(port));
+
+            return new Receiver(
+                    channel,
+                    null
+            );
+        }
+
+        /**
+         * @param port the local TCP port to accept the streamer's connection on
+         *
+         * @return a receiver for a streamer using SRSHubTelemetryStreamer.Transport.TCP
+         */
+        public static Receiver tcp(int port) throws IOException {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+
+            channel
+                    .socket()
+                    .bind(new InetSocketAddress(port));
+
+            return new Receiver(
+                    null,
+                    channel
+            );
+        }
+
+        /**
+         * @return the local port the receiver is bound to
+         */
+        public int port() {
+            return datagramChannel != null ?
+                    datagramChannel
+                            .socket()
+                            .getLocalPort() :
+                    serverChannel
+                            .socket()
+                            .getLocalPort();
+        }
+
+        /**
+         * waits for the next record and decodes it
+         *
+         * @param record the record to fill
+         * @param timeoutMillis how long to wait for a record to arrive
+         *
+         * @return true if the record was filled, false if the timeout elapsed first
+         */
+        public boolean receive(Record record, long timeoutMillis) throws IOException {
+            long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+
+            while (remainingRecords == 0) {
+                if (nextBatch()) {
+                    continue;
+                }
+
+                long remaining = (deadline - System.nanoTime()) / 1_000_000;
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                selector.select(remaining);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    }
+                }
+
+                selector
+                        .selectedKeys()
+                        .clear();
+            }
+
+            try {
+                decode(
+                        batch,
+                        record
+                );
+            }
+            catch (RuntimeException e) {
+                malformedBatches++;
+                remainingRecords = 0;
+                batch.limit(0);
+
+                // a TCP stream cannot be resynchronized after a bad record
+                dropConnection();
+
+                return receive(
+                        record,
+                        Math.max(
+                                0,
+                                (deadline - System.nanoTime()) / 1_000_000
+                        )
+                );
+            }
+
+            remainingRecords--;
+            records++;
+
+            if (lastSequence >= 0 && record.sequence > lastSequence + 1) {
+                lostRecords += record.sequence - lastSequence - 1;
+            }
+
+            lastSequence = record.sequence;
+
+            return true;
+        }
+
+        // reads whatever has arrived and frames the next batch; returns whether a batch is ready
+        private boolean nextBatch() throws IOException {
+            if (datagramChannel != null) {
+                input.clear();
+
+                if (datagramChannel.receive(input) == null) {
+                    return false;
+                }
+
+                input.flip();
+
+                boolean framed = frame();
+
+                if (!framed) {
+                    malformedBatches++;
+                }
+
+                return framed;
+            }
+
+            if (socketChannel == null) {
+                return false;
+            }
+
+            // discard the batch that was just consumed before reading more
+            input.position(batch.limit());
+            input.compact();
+
+            int read = socketChannel.read(input);
+
+            input.flip();
+
+            if (read < 0) {
+                dropConnection();
+
+                return false;
+            }
+
+            if (input.remaining() < BATCH_HEADER_LENGTH ||
+                    input.remaining() < BATCH_HEADER_LENGTH + (input.getShort(input.position() + 4) & 0xFFFF)) {
+                // keep the partial batch for the next read
+                batch.limit(input.position());
+
+                return false;
+            }
+
+            if (!frame()) {
+                malformedBatches++;
+                dropConnection();
+
+                return false;
+            }
+
+            return true;
+        }
+
+        // points batch at the records of the batch at the start of input
+        private boolean frame() {
+            int start = input.position();
+
+            if (input.remaining() < BATCH_HEADER_LENGTH ||
+                    (input.getShort(start) & 0xFFFF) != MAGIC ||
+                    (input.get(start + 2) & 0xFF) != VERSION) {
+                batch.limit(0);
+
+                return false;
+            }
+
+            int count = input.get(start + 3) & 0xFF;
+            int length = input.getShort(start + 4) & 0xFFFF;
+
+            if (input.remaining() < BATCH_HEADER_LENGTH + length) {
+                batch.limit(0);
+
+                return false;
+            }
+
+            batch.limit(start + BATCH_HEADER_LENGTH + length);
+            batch.position(start + BATCH_HEADER_LENGTH);
+
+            remainingRecords = count;
+
+            return true;
+        }
+
+        private void accept() throws IOException {
+            SocketChannel accepted = serverChannel.accept();
+
+            if (accepted == null) {
+                return;
+            }
+
+            if (socketChannel != null) {
+                accepted.close();
+
+                return;
+            }
+
+            socketChannel = accepted;
+            socketChannel.configureBlocking(false);
+            socketChannel.register(
+                    selector,
+                    SelectionKey.OP_READ
+            );
+
+            input.clear();
+            input.flip();
+            batch.limit(0);
+        }
+
+        private void dropConnection() throws IOException {
+            if (socketChannel == null) {
+                return;
+            }
+
+            socketChannel.close();
+            socketChannel = null;
+
+            input.clear();
+            input.flip();
+            batch.limit(0);
+        }
+
+        /**
+         * @return the number of records decoded
+         */
+        public long records() {
+            return records;
+        }
+
+        /**
+         * @return the number of records missing from the sequence, whether dropped by the streamer or the network
+         */
+        public long lostRecords() {
+            return lostRecords;
+        }
+
+        /**
+         * @return the number of batches or records that failed to decode and were discarded
+         */
+        public long malformedBatches() {
+            return malformedBatches;
+        }
+
+        public void close() throws IOException {
+            dropConnection();
+
+            if (datagramChannel != null) {
+                datagramChannel.close();
+            }
+            else {
+                serverChannel.close();
+            }
+
+            selector.close();
+        }
+    }
+}
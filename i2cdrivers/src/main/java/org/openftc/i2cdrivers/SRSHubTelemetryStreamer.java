@@ -0,0 +1,595 @@
+package org.openftc.i2cdrivers;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * streams every decoded SRSHub frame as a compact binary record, in the format described by {@link SRSHubTelemetry}
+ * <p>
+ * call {@link #capture()} after each update; it only copies the frame into a bounded queue, and a sender thread
+ * encodes queued frames, batches them and writes them to the endpoint. when the sender falls behind, the oldest queued
+ * frames are dropped so capture never blocks the loop
+ * <p>
+ * the streamer is bound to the Config the SRSHub was using when start was called; stop and start it again after
+ * initializing or switching profiles to a different Config
+ */
+public class SRSHubTelemetryStreamer {
+    public enum Transport {
+        UDP,
+        TCP
+    }
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    // keeps each UDP batch within a single Ethernet frame
+    private static final int UDP_BATCH_BYTES = 1400;
+    private static final int TCP_BATCH_BYTES = 8192;
+
+    private static final long RECONNECT_INTERVAL_MILLIS = 1000;
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    private static final String TAG = "SRSHubTelemetryStreamer";
+
+    private final SRSHub hub;
+    private final InetSocketAddress endpoint;
+    private final Transport transport;
+    private final int queueCapacity;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private SRSHub.Config config;
+    private int[] deviceOffsets;
+    private int analogMask;
+    private int digitalMask;
+    private int encoderMask;
+    private int recordLength;
+
+    private int[] deviceBuses;
+    private int[] deviceTypes;
+    private int[] deviceValueCounts;
+    private int[] deviceWidths;
+    private boolean[] deviceSigned;
+
+    // guards the queue and the statistics
+    private final Object queueLock = new Object();
+
+    private long[][] queueSlots;
+    private long[] queueSequences;
+    private int queueHead = 0;
+    private int queueSize = 0;
+
+    private long sequence = 0;
+
+    private long captured = 0;
+    private long dropped = 0;
+    private long sent = 0;
+    private long batches = 0;
+    private long sendErrors = 0;
+
+    /**
+     * @param hub the SRSHub to stream; it must be initialized before start is called
+     * @param endpoint the address of the receiver
+     * @param transport whether to send datagrams or a TCP stream
+     */
+    public SRSHubTelemetryStreamer(SRSHub hub, InetSocketAddress endpoint, Transport transport) {
+        this(
+                hub,
+                endpoint,
+                transport,
+                DEFAULT_QUEUE_CAPACITY
+        );
+    }
+
+    /**
+     * @param hub the SRSHub to stream; it must be initialized before start is called
+     * @param endpoint the address of the receiver
+     * @param transport whether to send datagrams or a TCP stream
+     * @param queueCapacity the number of captured frames that may wait for the sender before the oldest is dropped
+     */
+    public SRSHubTelemetryStreamer(SRSHub hub, InetSocketAddress endpoint, Transport transport, int queueCapacity) {
+        if (queueCapacity < 1) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "Telemetry queue capacity must be at least 1"
+            );
+        }
+
+        this.hub = hub;
+        this.endpoint = endpoint;
+        this.transport = transport;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * binds the streamer to the SRSHub's current Config and starts the sender thread
+     *
+     * @throws IllegalStateException if the SRSHub has not finished initializing or the streamer is already running
+     * @throws IllegalArgumentException if a single record would not fit in a batch
+     */
+    public synchronized void start() {
+        if (!hub.ready()) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "The SRSHub must be initialized before streaming telemetry"
+            );
+        }
+
+        if (running) {
+            SRSHub.throwException(
+                    IllegalStateException.class,
+                    "The telemetry streamer is already running"
+            );
+        }
+
+        bind();
+
+        if (SRSHubTelemetry.BATCH_HEADER_LENGTH + 2 + recordLength > batchBytes()) {
+            SRSHub.throwException(
+                    IllegalArgumentException.class,
+                    "A telemetry record of " + recordLength + " bytes does not fit in a " + transport + " batch"
+            );
+        }
+
+        running = true;
+
+        thread = new Thread(
+                new Runnable() {
+                    public void run() {
+                        loop();
+                    }
+                },
+                TAG
+        );
+
+        thread.start();
+    }
+
+    /**
+     * stops the sender thread; frames still queued are discarded
+     */
+    public void stop() {
+        Thread current;
+
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+
+        if (current == null) {
+            return;
+        }
+
+        synchronized (queueLock) {
+            queueLock.notifyAll();
+        }
+
+        if (current != Thread.currentThread()) {
+            try {
+                current.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void bind() {
+        config = hub.config();
+        deviceOffsets = hub.frameDeviceOffsets();
+
+        analogMask = 0;
+        digitalMask = 0;
+        encoderMask = 0;
+
+        // sequence, timestamp, flags, pin masks, encoder mask and device count
+        recordLength = 4 + 8 + 1 + 2 + 2 + 1 + 1;
+
+        for (int i = 0; i < config.analogDigitalDevices.length; i++) {
+            if (config.analogDigitalDevices[i] == SRSHub.AnalogDigitalDevice.ANALOG) {
+                analogMask |= 1 << i;
+                recordLength += 2;
+            }
+            else if (config.analogDigitalDevices[i] == SRSHub.AnalogDigitalDevice.DIGITAL) {
+                digitalMask |= 1 << i;
+                recordLength += 2;
+            }
+        }
+
+        for (int i = 0; i < config.encoders.length; i++) {
+            if (config.encoders[i] != SRSHub.Encoder.NONE) {
+                encoderMask |= 1 << i;
+                recordLength += 8 + 4;
+            }
+        }
+
+        deviceBuses = new int[deviceOffsets.length];
+        deviceTypes = new int[deviceOffsets.length];
+        deviceValueCounts = new int[deviceOffsets.length];
+        deviceWidths = new int[deviceOffsets.length];
+        deviceSigned = new boolean[deviceOffsets.length];
+
+        int device = 0;
+
+        for (int bus = 0; bus < config.i2cBuses.length; bus++) {
+            for (SRSHub.I2CDevice i2cDevice : config.i2cBuses[bus]) {
+                SRSHub.Layout layout = i2cDevice.getLayout();
+
+                int width = 1;
+                boolean signed = false;
+
+                for (int k = 0; k < layout.size(); k++) {
+                    width = Math.max(
+                            width,
+                            layout.alignedBytes[k]
+                    );
+
+                    signed |= layout.kinds[k] == SRSHub.Field.Kind.SIGNED;
+                }
+
+                deviceBuses[device] = bus + 1;
+                deviceTypes[device] = i2cDevice.getValue();
+                deviceValueCounts[device] = layout.size();
+                deviceWidths[device] = width;
+                deviceSigned[device] = signed && width < 4;
+
+                recordLength += 5 + layout.size() * width;
+
+                device++;
+            }
+        }
+
+        int frameLength = hub.frameLength();
+
+        queueSlots = new long[queueCapacity][frameLength];
+        queueSequences = new long[queueCapacity];
+        queueHead = 0;
+        queueSize = 0;
+    }
+
+    private int batchBytes() {
+        return transport == Transport.UDP ? UDP_BATCH_BYTES : TCP_BATCH_BYTES;
+    }
+
+    /**
+     * queues the frame decoded by the most recent update; call it from the thread that calls update, after each
+     * update. does nothing while the streamer is stopped or the SRSHub is using a different Config
+     */
+    public void capture() {
+        // a frame of another Config does not fit the queue's slots or the receiver's record layout
+        if (!running || hub.config() != config) {
+            return;
+        }
+
+        synchronized (queueLock) {
+            if (queueSize == queueCapacity) {
+                queueHead = (queueHead + 1) % queueCapacity;
+                queueSize--;
+                dropped++;
+            }
+
+            int tail = (queueHead + queueSize) % queueCapacity;
+
+            hub.copyFrame(queueSlots[tail]);
+
+            queueSequences[tail] = sequence++;
+
+            queueSize++;
+            captured++;
+
+            queueLock.notifyAll();
+        }
+    }
+
+    private void loop() {
+        ByteBuffer buffer = ByteBuffer.allocate(batchBytes());
+        long[] frame = new long[hub.frameLength()];
+
+        ByteChannel channel = null;
+        long lastConnectMillis = 0;
+
+        int records = 0;
+
+        while (running) {
+            long recordSequence;
+
+            synchronized (queueLock) {
+                if (queueSize == 0) {
+                    try {
+                        queueLock.wait(IDLE_WAIT_MILLIS);
+                    }
+                    catch (InterruptedException e) {
+                        break;
+                    }
+
+                    continue;
+                }
+
+                System.arraycopy(
+                        queueSlots[queueHead],
+                        0,
+                        frame,
+                        0,
+                        frame.length
+                );
+
+                recordSequence = queueSequences[queueHead];
+
+                queueHead = (queueHead + 1) % queueCapacity;
+                queueSize--;
+            }
+
+            if (records == 0) {
+                buffer.position(SRSHubTelemetry.BATCH_HEADER_LENGTH);
+            }
+
+            encode(
+                    buffer,
+                    frame,
+                    recordSequence
+            );
+
+            records++;
+
+            boolean full = buffer.remaining() < recordLength + 2 || records == SRSHubTelemetry.MAX_RECORDS_PER_BATCH;
+
+            boolean idle;
+
+            synchronized (queueLock) {
+                idle = queueSize == 0;
+            }
+
+            // batch whatever has accumulated while the sender was busy, but never hold a record back waiting for more
+            if (!full && !idle) {
+                continue;
+            }
+
+            if (channel == null && System.currentTimeMillis() - lastConnectMillis >= RECONNECT_INTERVAL_MILLIS) {
+                lastConnectMillis = System.currentTimeMillis();
+
+                channel = open();
+            }
+
+            if (channel == null) {
+                synchronized (queueLock) {
+                    dropped += records;
+                }
+
+                buffer.clear();
+                records = 0;
+
+                continue;
+            }
+
+            try {
+                send(
+                        channel,
+                        buffer,
+                        records
+                );
+
+                synchronized (queueLock) {
+                    sent += records;
+                    batches++;
+                }
+            }
+            catch (IOException e) {
+                RobotLog.ww(
+                        TAG,
+                        "Telemetry send failed: %s",
+                        e.getMessage()
+                );
+
+                close(channel);
+
+                channel = null;
+
+                synchronized (queueLock) {
+                    dropped += records;
+                    sendErrors++;
+                }
+            }
+
+            buffer.clear();
+            records = 0;
+        }
+
+        close(channel);
+    }
+
+    private void encode(ByteBuffer buffer, long[] frame, long recordSequence) {
+        buffer.putShort((short) recordLength);
+        buffer.putInt((int) recordSequence);
+        buffer.putLong(frame[SRSHub.FRAME_TIMESTAMP]);
+        buffer.put((byte) (frame[SRSHub.FRAME_DISCONNECTED] != 0 ? SRSHubTelemetry.RECORD_FLAG_DISCONNECTED : 0));
+
+        buffer.putShort((short) analogMask);
+        buffer.putShort((short) digitalMask);
+
+        for (int i = 0; i < 12; i++) {
+            if (((analogMask | digitalMask) >> i & 1) == 1) {
+                double value = Double.longBitsToDouble(frame[SRSHub.FRAME_ANALOG_DIGITAL + i]);
+
+                buffer.putShort((short) ((digitalMask >> i & 1) == 1 ? value : Math.round(value * 4095)));
+            }
+        }
+
+        buffer.put((byte) encoderMask);
+
+        for (int i = 0; i < 6; i++) {
+            if ((encoderMask >> i & 1) == 1) {
+                buffer.putLong(frame[SRSHub.FRAME_ENCODER_POSITIONS + i]);
+                buffer.putInt((int) frame[SRSHub.FRAME_ENCODER_VELOCITIES + i]);
+            }
+        }
+
+        buffer.put((byte) deviceOffsets.length);
+
+        for (int device = 0; device < deviceOffsets.length; device++) {
+            int offset = deviceOffsets[device];
+
+            int flags = frame[offset] != 0 ? SRSHubTelemetry.DEVICE_FLAG_DISCONNECTED : 0;
+
+            if (deviceSigned[device]) {
+                flags |= SRSHubTelemetry.DEVICE_FLAG_SIGNED;
+            }
+
+            buffer.put((byte) deviceBuses[device]);
+            buffer.put((byte) deviceTypes[device]);
+            buffer.put((byte) flags);
+            buffer.put((byte) deviceValueCounts[device]);
+            buffer.put((byte) deviceWidths[device]);
+
+            for (int k = 0; k < deviceValueCounts[device]; k++) {
+                int value = (int) frame[offset + 1 + k];
+
+                switch (deviceWidths[device]) {
+                    case 1:
+                        buffer.put((byte) value);
+
+                        break;
+                    case 2:
+                        buffer.putShort((short) value);
+
+                        break;
+                    default:
+                        buffer.putInt(value);
+
+                        break;
+                }
+            }
+        }
+    }
+
+    private void send(ByteChannel channel, ByteBuffer buffer, int records) throws IOException {
+        buffer.putShort(
+                0,
+                (short) SRSHubTelemetry.MAGIC
+        );
+
+        buffer.put(
+                2,
+                (byte) SRSHubTelemetry.VERSION
+        );
+
+        buffer.put(
+                3,
+                (byte) records
+        );
+
+        buffer.putShort(
+                4,
+                (short) (buffer.position() - SRSHubTelemetry.BATCH_HEADER_LENGTH)
+        );
+
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private ByteChannel open() {
+        try {
+            if (transport == Transport.UDP) {
+                DatagramChannel channel = DatagramChannel.open();
+
+                channel.connect(endpoint);
+
+                return channel;
+            }
+
+            SocketChannel channel = SocketChannel.open(endpoint);
+
+            channel
+                    .socket()
+                    .setTcpNoDelay(true);
+
+            return channel;
+        }
+        catch (IOException e) {
+            RobotLog.ww(
+                    TAG,
+                    "Unable to open telemetry %s channel to %s: %s",
+                    transport,
+                    endpoint,
+                    e.getMessage()
+            );
+
+            return null;
+        }
+    }
+
+    private static void close(ByteChannel channel) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // nothing to recover; the channel is abandoned either way
+        }
+    }
+
+    /**
+     * @return whether the sender thread is running
+     */
+    public boolean running() {
+        return running;
+    }
+
+    /**
+     * @return the number of frames captured since start
+     */
+    public long captured() {
+        synchronized (queueLock) {
+            return captured;
+        }
+    }
+
+    /**
+     * @return the number of captured frames discarded, either because the queue was full or because they could not
+     *     be sent
+     */
+    public long dropped() {
+        synchronized (queueLock) {
+            return dropped;
+        }
+    }
+
+    /**
+     * @return the number of records written to the endpoint
+     */
+    public long sent() {
+        synchronized (queueLock) {
+            return sent;
+        }
+    }
+
+    /**
+     * @return the number of batches written to the endpoint
+     */
+    public long batches() {
+        synchronized (queueLock) {
+            return batches;
+        }
+    }
+
+    /**
+     * @return the number of batches that failed to send
+     */
+    public long sendErrors() {
+        synchronized (queueLock) {
+            return sendErrors;
+        }
+    }
+}